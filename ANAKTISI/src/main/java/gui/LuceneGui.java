@@ -1,6 +1,8 @@
 package gui;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.text.DefaultHighlighter;
 import javax.swing.text.Highlighter;
 import javax.swing.text.BadLocationException;
@@ -8,35 +10,54 @@ import javax.swing.text.DefaultHighlighter.DefaultHighlightPainter;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
-import com.opencsv.exceptions.CsvValidationException;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import lucene.Indexer;
+import lucene.IndexerConfig;
+import lucene.SearchResults;
 import lucene.Searcher;
+import lucene.Snippet;
+import lucene.YearFacets;
 
 import org.apache.lucene.document.Document;
-import org.apache.lucene.search.ScoreDoc;
-import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Query;
 
 public class LuceneGui extends JFrame {
-    private Indexer indexer;
-    private Searcher searcher;
+    private static final long serialVersionUID = 1L;
+    // opened by InitWorker off the EDT, null until then or when opening failed
+    private volatile Indexer indexer;
+    private volatile Searcher searcher;
     private JTextArea logArea;
     private JTextField queryField;
     private JComboBox<String> searchTypeBox;
-    private JButton searchButton, nextButton, sortYearButton, sortTitleButton;
+    private JButton searchButton, nextButton, sortYearButton, sortTitleButton, yearFilterButton;
     private JPanel navigationPanel;
+    private JLabel statusLabel;
     private static final String DATASET_PATH = "D:\\panepistimio\\anakthsh\\papers.csv";
     private static final String INDEX_DIR = "D:\\panepistimio\\anakthsh\\index";
     private static final String LOG_FILE = "log.txt";
-    private TopDocs currentHits;
-    private int currentPage;
+    private SearchResults currentHits;
     private static final int RESULTS_PER_PAGE = 10;
+    private static final int MAX_SUGGESTIONS = 8;
+    private static final int SUGGEST_DELAY_MILLIS = 150;
+    private static final Highlighter.HighlightPainter HIGHLIGHT_PAINTER = new DefaultHighlightPainter(Color.YELLOW);
     private boolean isSortedByYear = false;
     private boolean isSortedAlphabetically = false;
+    private SearchWorker currentSearch;
+    private Timer progressTimer;
+    private JPopupMenu suggestionPopup;
+    private Timer suggestTimer;
+    private SuggestWorker currentSuggest;
+    private boolean settingQuery = false;
+    private InitWorker initWorker;
+    private IndexWorker indexWorker;
+    private boolean closing = false;
 
     public LuceneGui() {
         setTitle("Lucene Indexer and Searcher");
@@ -51,6 +72,7 @@ public class LuceneGui extends JFrame {
         JPanel queryPanel = new JPanel(new BorderLayout());
         queryField = new JTextField();
         queryPanel.add(queryField, BorderLayout.CENTER);
+        initializeSuggestions();
 
         searchTypeBox = new JComboBox<>(new String[]{"Keyword Search", "Field Search"});
         queryPanel.add(searchTypeBox, BorderLayout.EAST);
@@ -77,31 +99,205 @@ public class LuceneGui extends JFrame {
         sortTitleButton.setEnabled(false);
         navigationPanel.add(sortTitleButton);
 
-        add(navigationPanel, BorderLayout.SOUTH);
+        yearFilterButton = new JButton("Filter by Year");
+        yearFilterButton.addActionListener(new YearFilterAction());
+        yearFilterButton.setEnabled(false);
+        navigationPanel.add(yearFilterButton);
 
-        initializeIndexer();
-        initializeSearcher();
+        statusLabel = new JLabel(" ");
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(navigationPanel, BorderLayout.CENTER);
+        southPanel.add(statusLabel, BorderLayout.SOUTH);
+        add(southPanel, BorderLayout.SOUTH);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                shutdown();
+            }
+        });
+
+        initWorker = new InitWorker();
+        initWorker.execute();
     }
 
-    private void initializeIndexer() {
-        try {
-            log("Initializing indexer...");
-            indexer = new Indexer(INDEX_DIR, LOG_FILE);
-            indexer.indexDataset(DATASET_PATH);
-            indexer.close();
-            log("Indexing completed.");
-        } catch (IOException | CsvValidationException e) {
-            log("Error initializing indexer: " + e.getMessage());
+    // suggestions are looked up once typing pauses for SUGGEST_DELAY_MILLIS
+    private void initializeSuggestions() {
+        suggestionPopup = new JPopupMenu();
+        suggestionPopup.setFocusable(false);
+        suggestTimer = new Timer(SUGGEST_DELAY_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                showSuggestions();
+            }
+        });
+        suggestTimer.setRepeats(false);
+        queryField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                queryChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+    }
+
+    private void queryChanged() {
+        if (!settingQuery) {
+            suggestTimer.restart();
+        }
+    }
+
+    private void showSuggestions() {
+        String prefix = queryField.getText();
+        if (currentSuggest != null) {
+            currentSuggest.cancel(false);
+            currentSuggest = null;
+        }
+        if (searcher == null || prefix.trim().isEmpty() || !"Keyword Search".equals(searchTypeBox.getSelectedItem())) {
+            suggestionPopup.setVisible(false);
+            return;
+        }
+        currentSuggest = new SuggestWorker(prefix);
+        currentSuggest.execute();
+    }
+
+    private void hideSuggestions() {
+        suggestTimer.stop();
+        if (currentSuggest != null) {
+            currentSuggest.cancel(false);
+            currentSuggest = null;
         }
+        suggestionPopup.setVisible(false);
     }
 
-    private void initializeSearcher() {
+    private class SuggestWorker extends SwingWorker<List<String>, Void> {
+        private final String prefix;
+
+        SuggestWorker(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected List<String> doInBackground() throws Exception {
+            return searcher.suggest(prefix, MAX_SUGGESTIONS);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || currentSuggest != this || !prefix.equals(queryField.getText())) {
+                return;
+            }
+            currentSuggest = null;
+            List<String> suggestions;
+            try {
+                suggestions = get();
+            } catch (ExecutionException e) {
+                suggestions = null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            suggestionPopup.setVisible(false);
+            suggestionPopup.removeAll();
+            if (suggestions == null || suggestions.isEmpty()) {
+                return;
+            }
+            for (final String suggestion : suggestions) {
+                JMenuItem item = new JMenuItem(suggestion);
+                item.addActionListener(new ActionListener() {
+                    @Override
+                    public void actionPerformed(ActionEvent e) {
+                        settingQuery = true;
+                        queryField.setText(suggestion);
+                        settingQuery = false;
+                        searchButton.doClick();
+                    }
+                });
+                suggestionPopup.add(item);
+            }
+            suggestionPopup.show(queryField, 0, queryField.getHeight());
+        }
+    }
+
+    // Opens the indexer and the searcher off the EDT, opening the index can take a while when it has to
+    // load the duplicate signatures or warm the searcher. The dataset itself is then indexed in the
+    // background by IndexWorker.
+    private class InitWorker extends SwingWorker<Void, String> {
+        @Override
+        protected Void doInBackground() {
+            try {
+                publish("Initializing indexer...");
+                indexer = new Indexer(INDEX_DIR, LOG_FILE, new IndexerConfig().setIncremental(true));
+            } catch (IOException e) {
+                publish("Error initializing indexer: " + e.getMessage());
+            }
+            try {
+                publish("Initializing searcher...");
+                searcher = indexer != null ? new Searcher(indexer) : new Searcher(INDEX_DIR);
+                publish("Searcher initialized.");
+            } catch (IOException e) {
+                publish("Error initializing searcher: " + e.getMessage());
+            }
+            return null;
+        }
+
+        @Override
+        protected void process(List<String> messages) {
+            for (String message : messages) {
+                log(message);
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (!closing && indexer != null) {
+                indexWorker = new IndexWorker();
+                indexWorker.execute();
+            }
+        }
+    }
+
+    // blocks the EDT until the background work is over, the index is closed right after
+    private void shutdown() {
+        closing = true;
+        hideSuggestions();
+        if (progressTimer != null) {
+            progressTimer.stop();
+        }
+        if (currentSearch != null) {
+            currentSearch.cancel(false);
+        }
+        await(initWorker);
+        if (indexWorker != null) {
+            indexWorker.stop();
+        }
         try {
-            log("Initializing searcher...");
-            searcher = new Searcher(INDEX_DIR);
-            log("Searcher initialized.");
+            if (searcher != null) {
+                searcher.close();
+            }
+            if (indexer != null) {
+                indexer.close();
+            }
         } catch (IOException e) {
-            log("Error initializing searcher: " + e.getMessage());
+            System.err.println("Error closing index: " + e.getMessage());
+        }
+    }
+
+    private static void await(SwingWorker<?, ?> worker) {
+        try {
+            worker.get();
+        } catch (ExecutionException e) {
+            // reported by the worker itself
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -109,9 +305,173 @@ public class LuceneGui extends JFrame {
         logArea.append(message + "\n");
     }
 
+    private class IndexWorker extends SwingWorker<Long, Void> {
+        private long lastDocs;
+        private long lastTime;
+
+        IndexWorker() {
+            log("Indexing " + DATASET_PATH + " in the background, the existing index can be searched meanwhile.");
+            lastTime = System.nanoTime();
+            progressTimer = new Timer(1000, new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    updateProgress();
+                }
+            });
+            progressTimer.start();
+        }
+
+        @Override
+        protected Long doInBackground() throws Exception {
+            return indexer.indexDataset(DATASET_PATH);
+        }
+
+        // Indexing stops after the record in progress and this waits until it has. The worker is not
+        // cancelled through SwingWorker.cancel, which neither stops the indexer nor can be waited for,
+        // and an interrupt could hit the writer in the middle of writing a file.
+        void stop() {
+            indexer.stopIndexing();
+            await(this);
+        }
+
+        private void updateProgress() {
+            long docs = indexer.getDocsIndexed();
+            long now = System.nanoTime();
+            double seconds = (now - lastTime) / 1e9;
+            double docsPerSec = seconds > 0 ? (docs - lastDocs) / seconds : 0;
+            lastDocs = docs;
+            lastTime = now;
+            statusLabel.setText(String.format("Indexing: %,d documents indexed (%,.0f docs/sec)", docs, docsPerSec));
+        }
+
+        @Override
+        protected void done() {
+            progressTimer.stop();
+            try {
+                long docs = get();
+                statusLabel.setText(String.format("Indexing completed: %,d documents indexed.", docs));
+                log("Indexing completed.");
+            } catch (ExecutionException e) {
+                statusLabel.setText("Indexing failed.");
+                log("Error indexing dataset: " + e.getCause().getMessage());
+            } catch (InterruptedException | CancellationException e) {
+                statusLabel.setText("Indexing stopped.");
+            }
+        }
+    }
+
+    private static class ResultPage {
+        final SearchResults hits;
+        final Document[] docs;
+        final Map<String, Snippet[]> snippets;
+
+        ResultPage(SearchResults hits, Document[] docs, Map<String, Snippet[]> snippets) {
+            this.hits = hits;
+            this.docs = docs;
+            this.snippets = snippets;
+        }
+    }
+
+    // runs a search and loads its page off the EDT; a search started later cancels this one and a
+    // cancelled or superseded search never touches the display
+    private abstract class SearchWorker extends SwingWorker<ResultPage, Void> {
+        private final String errorMessage;
+
+        SearchWorker(String errorMessage) {
+            this.errorMessage = errorMessage;
+        }
+
+        protected abstract SearchResults search() throws Exception;
+
+        // called on the EDT once the page is displayed
+        protected void displayed() {
+        }
+
+        // called on the EDT after the error has been logged
+        protected void failed() {
+        }
+
+        @Override
+        protected ResultPage doInBackground() throws Exception {
+            SearchResults hits = search();
+            if (isCancelled()) {
+                return null;
+            }
+            Map<String, Snippet[]> snippets = searcher.highlight(hits, 1);
+            Document[] docs = new Document[hits.scoreDocs.length];
+            for (int i = 0; i < docs.length; i++) {
+                if (isCancelled()) {
+                    return null;
+                }
+                docs[i] = searcher.getDocument(hits, hits.scoreDocs[i], Searcher.SUMMARY_FIELDS);
+            }
+            return new ResultPage(hits, docs, snippets);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || currentSearch != this) {
+                return;
+            }
+            currentSearch = null;
+            try {
+                ResultPage page = get();
+                currentHits = page.hits;
+                displaySearchResults(page);
+                displayed();
+            } catch (ExecutionException e) {
+                log(errorMessage + e.getCause().getMessage());
+                failed();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void startSearch(SearchWorker worker) {
+        if (searcher == null) {
+            log("Searcher is not available.");
+            return;
+        }
+        if (currentSearch != null) {
+            currentSearch.cancel(false);
+        }
+        currentSearch = worker;
+        worker.execute();
+    }
+
+    private class NewSearchWorker extends SearchWorker {
+        private final String field;
+        private final String queryStr;
+
+        NewSearchWorker(String field, String queryStr) {
+            super("Error performing search: ");
+            this.field = field;
+            this.queryStr = queryStr;
+        }
+
+        @Override
+        protected SearchResults search() throws Exception {
+            if (field == null) {
+                return searcher.facetedSearch(queryStr, RESULTS_PER_PAGE);
+            }
+            return searcher.facetedSearch(searcher.parse(field, queryStr), RESULTS_PER_PAGE, null);
+        }
+
+        @Override
+        protected void displayed() {
+            isSortedByYear = false;
+            isSortedAlphabetically = false;
+            sortYearButton.setEnabled(true);
+            sortTitleButton.setEnabled(true);
+            yearFilterButton.setEnabled(true);
+        }
+    }
+
     private class SearchAction implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
+            hideSuggestions();
             String queryStr = queryField.getText();
             String searchType = (String) searchTypeBox.getSelectedItem();
 
@@ -120,83 +480,82 @@ public class LuceneGui extends JFrame {
                 return;
             }
 
-            try {
-                if (searchType.equals("Keyword Search")) {
-                    performKeywordSearch(queryStr);
+            if (searchType.equals("Keyword Search")) {
+                performKeywordSearch(queryStr);
+            } else {
+                String field = JOptionPane.showInputDialog(LuceneGui.this, "Enter the field to search:", "Field Search", JOptionPane.PLAIN_MESSAGE);
+                if (field != null && !field.isEmpty()) {
+                    performFieldSearch(field, queryStr);
                 } else {
-                    String field = JOptionPane.showInputDialog(LuceneGui.this, "Enter the field to search:", "Field Search", JOptionPane.PLAIN_MESSAGE);
-                    if (field != null && !field.isEmpty()) {
-                        performFieldSearch(field, queryStr);
-                    } else {
-                        log("Field cannot be empty.");
-                    }
+                    log("Field cannot be empty.");
                 }
-                isSortedByYear = false;
-                isSortedAlphabetically = false;
-                sortYearButton.setEnabled(true);
-                sortTitleButton.setEnabled(true);
-            } catch (Exception ex) {
-                log("Error performing search: " + ex.getMessage());
             }
         }
 
-        private void performKeywordSearch(String queryStr) throws Exception {
+        private void performKeywordSearch(String queryStr) {
             log("Performing keyword search for: " + queryStr);
-            currentHits = searcher.search(queryStr);
-            currentPage = 0;
-            displaySearchResults(queryStr);
+            startSearch(new NewSearchWorker(null, queryStr));
         }
 
-        private void performFieldSearch(String field, String queryStr) throws Exception {
+        private void performFieldSearch(String field, String queryStr) {
             log("Performing field search for: " + queryStr + " in field: " + field);
-            currentHits = searcher.fieldSearch(field, queryStr);
-            currentPage = 0;
-            displaySearchResults(queryStr);
+            startSearch(new NewSearchWorker(field, queryStr));
         }
     }
 
-    private void displaySearchResults(String queryStr) throws IOException {
+    private void displaySearchResults(ResultPage page) {
         logArea.setText("");
-        int start = currentPage * RESULTS_PER_PAGE;
-        int end = Math.min(start + RESULTS_PER_PAGE, currentHits.scoreDocs.length);
-        log("Displaying results " + (start + 1) + " to " + end + " out of " + currentHits.totalHits.value + " hits.");
+        logArea.getHighlighter().removeAllHighlights();
+        long start = page.hits.getOffset();
+        long end = start + page.hits.scoreDocs.length;
+        log("Displaying results " + (start + 1) + " to " + end + " out of " + page.hits.getTotalHitsDescription() + " hits.");
+        if (page.hits.getYearFacets() != null) {
+            log("Hits per decade: " + describeDecades(page.hits.getYearFacets()));
+        }
 
-        for (int i = start; i < end; i++) {
-            ScoreDoc scoreDoc = currentHits.scoreDocs[i];
-            Document doc = searcher.getDocument(scoreDoc);
-            logResult(doc, queryStr);
+        for (int i = 0; i < page.docs.length; i++) {
+            logResult(page.docs[i], page.snippets, i);
         }
 
-        nextButton.setEnabled(end < currentHits.totalHits.value);
+        nextButton.setEnabled(page.hits.hasNextPage());
     }
 
-    private void logResult(Document doc, String queryStr) throws IOException {
+    private static String describeDecades(YearFacets facets) {
+        StringBuilder description = new StringBuilder();
+        for (Map.Entry<Integer, Long> decade : facets.getDecadeCounts().entrySet()) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append(decade.getKey()).append("s (").append(decade.getValue()).append(")");
+        }
+        return description.length() > 0 ? description.toString() : "none";
+    }
+
+    private void logResult(Document doc, Map<String, Snippet[]> snippets, int hit) {
         log("Source ID: " + doc.get("source_id"));
         log("Year: " + doc.get("year"));
-        log("Title: " + doc.get("title"));
-        log("Abstract: " + doc.get("abstract"));
-        String fullText = doc.get("full_text");
-        int index = fullText.indexOf(queryStr);
-        if (index != -1) {
-            int start = Math.max(0, index - 30);
-            int end = Math.min(fullText.length(), index + queryStr.length() + 30);
-            String relevantPart = "..." + fullText.substring(start, end) + "...";
-            log("Relevant Part of Full Text: " + relevantPart);
+        logSnippet("Title: ", snippets.get("title")[hit]);
+        logSnippet("Abstract: ", snippets.get("abstract")[hit]);
+        Snippet fullText = snippets.get("full_text")[hit];
+        if (fullText != null) {
+            logSnippet("Relevant Part of Full Text: ", fullText);
         }
         log("\n");
-
-        highlightKeyword(queryStr);
     }
 
-    private void highlightKeyword(String keyword) {
+    // appends the snippet and paints its matches from the highlighter offsets
+    private void logSnippet(String label, Snippet snippet) {
+        if (snippet == null) {
+            log(label);
+            return;
+        }
+        int base = logArea.getDocument().getLength() + label.length();
+        log(label + snippet.getText());
+
         Highlighter highlighter = logArea.getHighlighter();
-        Highlighter.HighlightPainter painter = new DefaultHighlightPainter(Color.YELLOW);
-        String text = logArea.getText();
-        int index = text.indexOf(keyword);
-        while (index >= 0) {
+        for (int i = 0; i < snippet.getMatchCount(); i++) {
             try {
-                highlighter.addHighlight(index, index + keyword.length(), painter);
-                index = text.indexOf(keyword, index + keyword.length());
+                highlighter.addHighlight(base + snippet.getMatchStart(i), base + snippet.getMatchEnd(i), HIGHLIGHT_PAINTER);
             } catch (BadLocationException e) {
                 e.printStackTrace();
             }
@@ -206,12 +565,20 @@ public class LuceneGui extends JFrame {
     private class NextAction implements ActionListener {
         @Override
         public void actionPerformed(ActionEvent e) {
-            currentPage++;
-            try {
-                displaySearchResults(queryField.getText());
-            } catch (IOException ioException) {
-                log("Error displaying next results: " + ioException.getMessage());
-            }
+            final SearchResults page = currentHits;
+            nextButton.setEnabled(false);
+            startSearch(new SearchWorker("Error displaying next results: ") {
+                @Override
+                protected SearchResults search() throws Exception {
+                    return searcher.nextPage(page);
+                }
+
+                @Override
+                protected void failed() {
+                    // the page shown is still the one the button pages from
+                    nextButton.setEnabled(currentHits == page && page.hasNextPage());
+                }
+            });
         }
     }
 
@@ -219,28 +586,19 @@ public class LuceneGui extends JFrame {
         @Override
         public void actionPerformed(ActionEvent e) {
             if (currentHits != null) {
-                List<ScoreDoc> scoreDocList = Arrays.asList(currentHits.scoreDocs);
-                scoreDocList.sort(new Comparator<ScoreDoc>() {
+                final Query query = currentHits.getQuery();
+                startSearch(new SearchWorker("Error displaying sorted results: ") {
                     @Override
-                    public int compare(ScoreDoc o1, ScoreDoc o2) {
-                        try {
-                            int year1 = Integer.parseInt(searcher.getDocument(o1).get("year"));
-                            int year2 = Integer.parseInt(searcher.getDocument(o2).get("year"));
-                            return Integer.compare(year1, year2);
-                        } catch (IOException ex) {
-                            return 0;
-                        }
+                    protected SearchResults search() throws Exception {
+                        return searcher.facetedSearch(query, RESULTS_PER_PAGE, Searcher.SORT_BY_YEAR);
+                    }
+
+                    @Override
+                    protected void displayed() {
+                        isSortedByYear = true;
+                        isSortedAlphabetically = false;
                     }
                 });
-                currentHits.scoreDocs = scoreDocList.toArray(new ScoreDoc[0]);
-                currentPage = 0;
-                try {
-                    displaySearchResults(queryField.getText());
-                } catch (IOException ioException) {
-                    log("Error displaying sorted results: " + ioException.getMessage());
-                }
-                isSortedByYear = true;
-                isSortedAlphabetically = false;
             }
         }
     }
@@ -249,32 +607,56 @@ public class LuceneGui extends JFrame {
         @Override
         public void actionPerformed(ActionEvent e) {
             if (currentHits != null) {
-                List<ScoreDoc> scoreDocList = Arrays.asList(currentHits.scoreDocs);
-                scoreDocList.sort(new Comparator<ScoreDoc>() {
+                final Query query = currentHits.getQuery();
+                startSearch(new SearchWorker("Error displaying sorted results: ") {
+                    @Override
+                    protected SearchResults search() throws Exception {
+                        return searcher.facetedSearch(query, RESULTS_PER_PAGE, Searcher.SORT_BY_TITLE);
+                    }
+
                     @Override
-                    public int compare(ScoreDoc o1, ScoreDoc o2) {
-                        try {
-                            String title1 = searcher.getDocument(o1).get("title");
-                            String title2 = searcher.getDocument(o2).get("title");
-                            return title1.compareToIgnoreCase(title2);
-                        } catch (IOException ex) {
-                            return 0;
-                        }
+                    protected void displayed() {
+                        isSortedByYear = false;
+                        isSortedAlphabetically = true;
                     }
                 });
-                currentHits.scoreDocs = scoreDocList.toArray(new ScoreDoc[0]);
-                currentPage = 0;
-                try {
-                    displaySearchResults(queryField.getText());
-                } catch (IOException ioException) {
-                    log("Error displaying sorted results: " + ioException.getMessage());
-                }
-                isSortedByYear = false;
-                isSortedAlphabetically = true;
             }
         }
     }
 
+    private class YearFilterAction implements ActionListener {
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            if (currentHits == null || currentHits.getYearFacets() == null) {
+                return;
+            }
+            String input = JOptionPane.showInputDialog(LuceneGui.this,
+                    "Hits per decade: " + describeDecades(currentHits.getYearFacets()) + "\nEnter a year or a range such as 1990-1999:",
+                    "Filter by Year", JOptionPane.PLAIN_MESSAGE);
+            if (input == null || input.trim().isEmpty()) {
+                return;
+            }
+            final int minYear;
+            final int maxYear;
+            try {
+                String[] range = input.trim().split("\\s*-\\s*", 2);
+                minYear = Integer.parseInt(range[0].trim());
+                maxYear = range.length > 1 ? Integer.parseInt(range[1].trim()) : minYear;
+            } catch (NumberFormatException ex) {
+                log("Invalid year range: " + input);
+                return;
+            }
+            final SearchResults results = currentHits;
+            log("Filtering results to the years " + minYear + " to " + maxYear);
+            startSearch(new SearchWorker("Error filtering results: ") {
+                @Override
+                protected SearchResults search() throws Exception {
+                    return searcher.drillDown(results, minYear, maxYear);
+                }
+            });
+        }
+    }
+
     public static void main(String[] args) {
         SwingUtilities.invokeLater(new Runnable() {
             @Override
@@ -0,0 +1,70 @@
+package lucene;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.miscellaneous.PerFieldAnalyzerWrapper;
+import org.apache.lucene.analysis.miscellaneous.TruncateTokenFilter;
+import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.search.suggest.document.CompletionAnalyzer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The analysis chains shared by Indexer and Searcher. Titles keep the plain StandardAnalyzer so exact
+// title words still match, abstract and full_text are stemmed with English stop words removed, and
+// title_prefix indexes the leading characters of every title word so that a prefix is a single term.
+// title_suggest holds each whole title in a completion FST for Searcher.suggest.
+class Analyzers {
+    static final String TITLE_PREFIX_FIELD = "title_prefix";
+    static final String TITLE_SUGGEST_FIELD = "title_suggest";
+    static final int MIN_PREFIX_LENGTH = 1;
+    static final int MAX_PREFIX_LENGTH = 20;
+
+    private Analyzers() {
+    }
+
+    static Analyzer indexAnalyzer() {
+        return perField(new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new StandardTokenizer();
+                TokenStream stream = new LowerCaseFilter(tokenizer);
+                stream = new EdgeNGramTokenFilter(stream, MIN_PREFIX_LENGTH, MAX_PREFIX_LENGTH, false);
+                return new TokenStreamComponents(tokenizer, stream);
+            }
+        });
+    }
+
+    // the query side of title_prefix does not expand the typed words, a word longer than the
+    // longest indexed prefix is cut to that prefix instead
+    static Analyzer queryAnalyzer() {
+        return perField(new Analyzer() {
+            @Override
+            protected TokenStreamComponents createComponents(String fieldName) {
+                Tokenizer tokenizer = new StandardTokenizer();
+                TokenStream stream = new LowerCaseFilter(tokenizer);
+                stream = new TruncateTokenFilter(stream, MAX_PREFIX_LENGTH);
+                return new TokenStreamComponents(tokenizer, stream);
+            }
+        });
+    }
+
+    static Analyzer suggestAnalyzer() {
+        return new CompletionAnalyzer(new StandardAnalyzer());
+    }
+
+    private static Analyzer perField(Analyzer titlePrefixAnalyzer) {
+        Analyzer english = new EnglishAnalyzer();
+        Map<String, Analyzer> fieldAnalyzers = new HashMap<>();
+        fieldAnalyzers.put("abstract", english);
+        fieldAnalyzers.put("full_text", english);
+        fieldAnalyzers.put(TITLE_PREFIX_FIELD, titlePrefixAnalyzer);
+        fieldAnalyzers.put(TITLE_SUGGEST_FIELD, suggestAnalyzer());
+        return new PerFieldAnalyzerWrapper(new StandardAnalyzer(), fieldAnalyzers);
+    }
+}
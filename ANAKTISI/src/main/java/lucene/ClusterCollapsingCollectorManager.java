@@ -0,0 +1,240 @@
+package lucene;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Top hits by relevance with at most one hit per cluster_id, the best scoring one. Which hit is best
+// is only known once every hit has been seen, so the cursor of the previous page is applied to the
+// collapsed list in reduce; pages stay consistent, at the price of visiting every hit on every page.
+// Papers without a cluster_id are clusters of their own, so only the best of them up to the page size
+// are kept. totalHits counts clusters, and so do the year facets when countYears is set: each cluster
+// is counted once, in the year of its best hit.
+class ClusterCollapsingCollectorManager implements CollectorManager<ClusterCollapsingCollectorManager.CollapsingCollector, ClusterCollapsingCollectorManager.CollapsedTopDocs> {
+    // higher score first, then lower doc id, the order of TopScoreDocCollector
+    private static final Comparator<ScoreDoc> RELEVANCE = new Comparator<ScoreDoc>() {
+        @Override
+        public int compare(ScoreDoc a, ScoreDoc b) {
+            return ClusterCollapsingCollectorManager.compare(a.score, a.doc, b);
+        }
+    };
+
+    private final int pageSize;
+    private final ScoreDoc after;
+    private final boolean countYears;
+
+    ClusterCollapsingCollectorManager(int pageSize, ScoreDoc after, boolean countYears) {
+        this.pageSize = pageSize;
+        this.after = after;
+        this.countYears = countYears;
+    }
+
+    static class CollapsedTopDocs extends TopDocs {
+        // null unless countYears was set
+        final YearFacets yearFacets;
+
+        CollapsedTopDocs(TotalHits totalHits, ScoreDoc[] scoreDocs, YearFacets yearFacets) {
+            super(totalHits, scoreDocs);
+            this.yearFacets = yearFacets;
+        }
+    }
+
+    // RELEVANCE order of a hit that has no ScoreDoc yet
+    private static int compare(float score, int doc, ScoreDoc other) {
+        int byScore = Float.compare(other.score, score);
+        return byScore != 0 ? byScore : Integer.compare(doc, other.doc);
+    }
+
+    @Override
+    public CollapsingCollector newCollector() {
+        return new CollapsingCollector(pageSize, after, countYears);
+    }
+
+    @Override
+    public CollapsedTopDocs reduce(Collection<CollapsingCollector> collectors) {
+        Map<Long, Hit> best = new HashMap<>();
+        long unclustered = 0;
+        // the worst of the kept hits at the head
+        PriorityQueue<ScoreDoc> page = newPage(pageSize);
+        for (CollapsingCollector collector : collectors) {
+            // a cluster can have hits in more than one slice
+            for (Map.Entry<Long, Hit> entry : collector.best.entrySet()) {
+                Hit current = best.get(entry.getKey());
+                if (current == null || RELEVANCE.compare(entry.getValue(), current) < 0) {
+                    best.put(entry.getKey(), entry.getValue());
+                }
+            }
+            for (ScoreDoc hit : collector.unclustered) {
+                offer(page, pageSize, hit);
+            }
+            unclustered += collector.unclusteredCount;
+        }
+
+        for (Hit hit : best.values()) {
+            if (after == null || RELEVANCE.compare(hit, after) > 0) {
+                offer(page, pageSize, hit);
+            }
+        }
+        ScoreDoc[] scoreDocs = new ScoreDoc[page.size()];
+        for (int i = scoreDocs.length - 1; i >= 0; i--) {
+            ScoreDoc hit = page.poll();
+            scoreDocs[i] = new ScoreDoc(hit.doc, hit.score);
+        }
+        YearFacets yearFacets = null;
+        if (countYears) {
+            // the unclustered hits were counted as they were collected
+            List<YearFacetCollectorManager.YearFacetCollector> unclusteredYears = new ArrayList<>();
+            for (CollapsingCollector collector : collectors) {
+                unclusteredYears.add(collector.unclusteredYears);
+            }
+            YearFacets counted = new YearFacetCollectorManager().reduce(unclusteredYears);
+            SortedMap<Integer, Long> yearCounts = new TreeMap<>(counted.getYearCounts());
+            long missing = counted.getMissingCount() + countYears(yearCounts, best.values());
+            yearFacets = new YearFacets(yearCounts, missing);
+        }
+        return new CollapsedTopDocs(new TotalHits(best.size() + unclustered, TotalHits.Relation.EQUAL_TO), scoreDocs, yearFacets);
+    }
+
+    // returns the number of hits without a year
+    private static long countYears(SortedMap<Integer, Long> yearCounts, Collection<Hit> hits) {
+        long missing = 0;
+        for (Hit hit : hits) {
+            if (!hit.hasYear) {
+                missing++;
+                continue;
+            }
+            Long previous = yearCounts.get(hit.year);
+            yearCounts.put(hit.year, (previous == null ? 0 : previous) + 1);
+        }
+        return missing;
+    }
+
+    private static PriorityQueue<ScoreDoc> newPage(int pageSize) {
+        return new PriorityQueue<>(pageSize + 1, Collections.reverseOrder(RELEVANCE));
+    }
+
+    private static void offer(PriorityQueue<ScoreDoc> page, int pageSize, ScoreDoc hit) {
+        page.add(hit);
+        if (page.size() > pageSize) {
+            page.poll();
+        }
+    }
+
+    // the best hit of a cluster and, when years are counted, its year
+    private static class Hit extends ScoreDoc {
+        int year;
+        boolean hasYear;
+
+        Hit(int doc, float score) {
+            super(doc, score);
+        }
+    }
+
+    static class CollapsingCollector implements Collector {
+        private final int pageSize;
+        private final ScoreDoc after;
+        private final Map<Long, Hit> best = new HashMap<>();
+        // the best unclustered hits after the cursor, worst at the head, and how many there were in all
+        private final PriorityQueue<ScoreDoc> unclustered;
+        private long unclusteredCount;
+        // null unless years are counted
+        private final YearFacetCollectorManager.YearFacetCollector unclusteredYears;
+
+        CollapsingCollector(int pageSize, ScoreDoc after, boolean countYears) {
+            this.pageSize = pageSize;
+            this.after = after;
+            this.unclustered = newPage(pageSize);
+            this.unclusteredYears = countYears ? new YearFacetCollectorManager.YearFacetCollector() : null;
+        }
+
+        @Override
+        public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+            final NumericDocValues clusterIds = DocValues.getNumeric(context.reader(), DuplicateDetector.CLUSTER_FIELD);
+            final NumericDocValues years = unclusteredYears != null ? DocValues.getNumeric(context.reader(), "year_value") : null;
+            final LeafCollector yearCollector = unclusteredYears != null ? unclusteredYears.getLeafCollector(context) : null;
+            final int docBase = context.docBase;
+            return new LeafCollector() {
+                private Scorable scorer;
+
+                @Override
+                public void setScorer(Scorable scorer) {
+                    this.scorer = scorer;
+                }
+
+                @Override
+                public void collect(int doc) throws IOException {
+                    float score = scorer.score();
+                    int docId = docBase + doc;
+                    if (!clusterIds.advanceExact(doc)) {
+                        collectUnclustered(doc, docId, score);
+                        return;
+                    }
+                    Long clusterId = clusterIds.longValue();
+                    Hit current = best.get(clusterId);
+                    if (current == null) {
+                        best.put(clusterId, readYear(new Hit(docId, score), doc));
+                    } else if (compare(score, docId, current) < 0) {
+                        // the map holds the only reference, so the old best is overwritten
+                        current.doc = docId;
+                        current.score = score;
+                        current.hasYear = false;
+                        readYear(current, doc);
+                    }
+                }
+
+                private void collectUnclustered(int doc, int docId, float score) throws IOException {
+                    unclusteredCount++;
+                    if (yearCollector != null) {
+                        yearCollector.collect(doc);
+                    }
+                    if (after != null && compare(score, docId, after) <= 0) {
+                        return;
+                    }
+                    if (unclustered.size() < pageSize) {
+                        unclustered.add(new ScoreDoc(docId, score));
+                    } else if (compare(score, docId, unclustered.peek()) < 0) {
+                        // the worst kept hit makes room and is reused
+                        ScoreDoc worst = unclustered.poll();
+                        worst.doc = docId;
+                        worst.score = score;
+                        unclustered.add(worst);
+                    }
+                }
+
+                // only for kept hits, the doc values are read in doc id order all the same
+                private Hit readYear(Hit hit, int doc) throws IOException {
+                    if (years != null && years.advanceExact(doc)) {
+                        hit.year = (int) years.longValue();
+                        hit.hasYear = true;
+                    }
+                    return hit;
+                }
+            };
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package lucene;
+
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+
+// Marks a query whose hits are collapsed to the best one per cluster_id, see Searcher.collapseByCluster.
+// It matches and scores exactly like the wrapped query; Searcher collects it with a
+// ClusterCollapsingCollectorManager. Being a query, the marker stays with the results for paging,
+// highlighting and the result cache.
+class CollapseByClusterQuery extends Query {
+    private final Query query;
+
+    CollapseByClusterQuery(Query query) {
+        this.query = query;
+    }
+
+    Query getQuery() {
+        return query;
+    }
+
+    @Override
+    public Query rewrite(IndexSearcher searcher) throws IOException {
+        Query rewritten = query.rewrite(searcher);
+        return rewritten == query ? this : new CollapseByClusterQuery(rewritten);
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) throws IOException {
+        return query.createWeight(searcher, scoreMode, boost);
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        query.visit(visitor);
+    }
+
+    @Override
+    public String toString(String field) {
+        return "CollapseByCluster(" + query.toString(field) + ")";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other) && query.equals(((CollapseByClusterQuery) other).query);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * classHash() + query.hashCode();
+    }
+}
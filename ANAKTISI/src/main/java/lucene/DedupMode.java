@@ -0,0 +1,11 @@
+package lucene;
+
+// what the Indexer does with a paper whose full text nearly matches one already in the index, set by IndexerConfig.setDedupMode
+public enum DedupMode {
+    // every paper is indexed, no signatures are computed
+    OFF,
+    // the later copy is not indexed
+    SKIP,
+    // every copy is indexed with the cluster id of the first one, so Searcher.collapseByCluster shows one per cluster
+    COLLAPSE
+}
@@ -0,0 +1,11 @@
+package lucene;
+
+// how the index files are read from disk
+public enum DirectoryMode {
+    // whatever FSDirectory.open picks for the platform
+    DEFAULT,
+    // memory-map the files, with the extensions in the preload set paged in when a segment is opened
+    MMAP,
+    // positional reads through FileChannel, for platforms where mapping large files is not possible
+    NIO
+}
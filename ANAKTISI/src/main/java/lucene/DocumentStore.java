@@ -0,0 +1,76 @@
+package lucene;
+
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.util.BytesRef;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Keeps large text bodies out of stored fields. Each body is deflated on its own and kept in a
+// binary doc values column, so fetching one paper's text reads and inflates only that paper,
+// and loading stored fields for a result list never touches it.
+class DocumentStore {
+    static final String FULL_TEXT_FIELD = "full_text_store";
+
+    private DocumentStore() {
+    }
+
+    static BytesRef compress(String text) {
+        byte[] input = text.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, input.length / 3));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return new BytesRef(out.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String decompress(BytesRef compressed) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.bytes, compressed.offset, compressed.length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(compressed.length * 3);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated document store entry");
+                }
+                out.write(buffer, 0, length);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt document store entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // the full text of a top-level doc id, null when the document has none
+    static String fullText(IndexReader reader, int docId) throws IOException {
+        List<LeafReaderContext> leaves = reader.leaves();
+        LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+        BinaryDocValues values = DocValues.getBinary(leaf.reader(), FULL_TEXT_FIELD);
+        if (!values.advanceExact(docId - leaf.docBase)) {
+            return null;
+        }
+        return decompress(values.binaryValue());
+    }
+}
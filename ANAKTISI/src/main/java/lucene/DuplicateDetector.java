@@ -0,0 +1,282 @@
+package lucene;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Finds near-duplicate full texts by MinHash. Each text gets HASHES minimum hashes over its word
+// shingles, of which the low 16 bits are kept; the share of equal values estimates the Jaccard
+// similarity of the two shingle sets, and papers at MIN_SIMILARITY or above are duplicates. To avoid
+// comparing every pair, signatures are split into BANDS bands of ROWS values and only papers that
+// agree on a whole band are compared: a pair at similarity 0.8 shares a band with probability
+// 1 - (1 - 0.8^4)^16 > 0.999, one at 0.3 with about 0.12.
+class DuplicateDetector {
+    static final String CLUSTER_FIELD = "cluster_id";
+    static final String SIGNATURE_FIELD = "minhash";
+    // source id of a near-duplicate skipped by DedupMode.SKIP, see Indexer.skippedDocument
+    static final String SKIPPED_ID_FIELD = "skipped_id";
+    // stored in the commit data, an index built with another signature is rebuilt
+    static final String SIGNATURE_ID = "minhash-64x16-w3-b16r4-v1";
+    static final double MIN_SIMILARITY = 0.8;
+    private static final int HASHES = 64;
+    private static final int BANDS = 16;
+    private static final int ROWS = HASHES / BANDS;
+    private static final int SHINGLE_WORDS = 3;
+    // shorter texts are too likely to collide, e.g. empty full texts
+    private static final int MIN_SHINGLES = 8;
+    // odd multipliers and offsets of the HASHES multiply-shift hash functions
+    private static final long[] MULTIPLIERS = new long[HASHES];
+    private static final long[] OFFSETS = new long[HASHES];
+
+    static {
+        for (int i = 0; i < HASHES; i++) {
+            MULTIPLIERS[i] = mix(2 * i + 1) | 1;
+            OFFSETS[i] = mix(2 * i + 2);
+        }
+    }
+
+    // one map per band from the band's packed values to the papers having them
+    private final List<Map<Long, List<Signature>>> bands = new ArrayList<>();
+    private final Map<String, Signature> bySourceId = new HashMap<>();
+    // the papers of each cluster, earliest first
+    private final Map<Long, List<Signature>> clusters = new HashMap<>();
+
+    static final class Signature {
+        final String sourceId;
+        final char[] minHashes;
+        // changes when the cluster is founded again, see remove
+        long clusterId;
+
+        Signature(String sourceId, char[] minHashes, long clusterId) {
+            this.sourceId = sourceId;
+            this.minHashes = minHashes;
+            this.clusterId = clusterId;
+        }
+    }
+
+    DuplicateDetector() {
+        for (int band = 0; band < BANDS; band++) {
+            bands.add(new HashMap<Long, List<Signature>>());
+        }
+    }
+
+    // null for texts with too few shingles to be compared
+    static char[] minHashes(String text) {
+        int[] mins = new int[HASHES];
+        Arrays.fill(mins, Integer.MAX_VALUE);
+        long[] window = new long[SHINGLE_WORDS];
+        int words = 0;
+        int shingles = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            // FNV-1a over the lower-cased word, re-OCR'd punctuation and case do not change it
+            long hash = 0xcbf29ce484222325L;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                hash ^= Character.toLowerCase(text.charAt(i++));
+                hash *= 0x100000001b3L;
+            }
+            window[words++ % SHINGLE_WORDS] = hash;
+            if (words < SHINGLE_WORDS) {
+                continue;
+            }
+            long shingle = 0;
+            for (int w = words - SHINGLE_WORDS; w < words; w++) {
+                shingle = shingle * 31 + window[w % SHINGLE_WORDS];
+            }
+            shingle = mix(shingle);
+            for (int h = 0; h < HASHES; h++) {
+                // the top 31 bits of a multiply-shift hash, compared as non-negative ints
+                int value = (int) ((shingle * MULTIPLIERS[h] + OFFSETS[h]) >>> 33);
+                if (value < mins[h]) {
+                    mins[h] = value;
+                }
+            }
+            shingles++;
+        }
+        if (shingles < MIN_SHINGLES) {
+            return null;
+        }
+        char[] minHashes = new char[HASHES];
+        for (int h = 0; h < HASHES; h++) {
+            minHashes[h] = (char) mins[h];
+        }
+        return minHashes;
+    }
+
+    // the murmur3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // a new cluster is named after its first paper
+    static long clusterId(String sourceId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < sourceId.length(); i++) {
+            hash ^= sourceId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    static BytesRef toBytes(char[] minHashes) {
+        byte[] bytes = new byte[minHashes.length * 2];
+        for (int h = 0; h < minHashes.length; h++) {
+            bytes[2 * h] = (byte) (minHashes[h] >>> 8);
+            bytes[2 * h + 1] = (byte) minHashes[h];
+        }
+        return new BytesRef(bytes);
+    }
+
+    // null for signatures written with another number of hashes
+    static char[] fromBytes(BytesRef bytes) {
+        if (bytes.length != HASHES * 2) {
+            return null;
+        }
+        char[] minHashes = new char[HASHES];
+        for (int h = 0; h < HASHES; h++) {
+            minHashes[h] = (char) (((bytes.bytes[bytes.offset + 2 * h] & 0xff) << 8) | (bytes.bytes[bytes.offset + 2 * h + 1] & 0xff));
+        }
+        return minHashes;
+    }
+
+    // Returns the earlier paper this one duplicates, or null after registering it as the first of a
+    // new cluster. A duplicate is registered too when keepDuplicate is set, since it is then indexed.
+    // Lookup and registration happen under one lock so that two copies indexed by different threads
+    // never both start a cluster; the signature itself is computed by the caller outside of it. A
+    // re-indexed paper has to be removed first, so that it is never its own duplicate.
+    synchronized Signature findOrAdd(String sourceId, char[] minHashes, boolean keepDuplicate) {
+        Signature match = find(minHashes);
+        if (match == null) {
+            add(new Signature(sourceId, minHashes, clusterId(sourceId)));
+        } else if (keepDuplicate) {
+            add(new Signature(sourceId, minHashes, match.clusterId));
+        }
+        return match;
+    }
+
+    // the cluster the paper is in now, null when it is not registered
+    synchronized Long clusterIdOf(String sourceId) {
+        Signature signature = bySourceId.get(sourceId);
+        return signature != null ? signature.clusterId : null;
+    }
+
+    // a paper that is already in the index
+    synchronized void load(String sourceId, char[] minHashes, long clusterId) {
+        remove(sourceId);
+        add(new Signature(sourceId, minHashes, clusterId));
+    }
+
+    // Removes a deleted or re-indexed paper. A cluster is named after its first paper, so when that
+    // one leaves, the earliest of the others founds the cluster again under its own name. The papers
+    // moved are returned so that the caller can update their cluster_id in the index.
+    synchronized List<Signature> remove(String sourceId) {
+        Signature signature = bySourceId.remove(sourceId);
+        if (signature == null) {
+            return Collections.emptyList();
+        }
+        for (int band = 0; band < BANDS; band++) {
+            Map<Long, List<Signature>> buckets = bands.get(band);
+            Long key = bandKey(signature.minHashes, band);
+            List<Signature> bucket = buckets.get(key);
+            bucket.remove(signature);
+            if (bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+        List<Signature> members = clusters.remove(signature.clusterId);
+        members.remove(signature);
+        if (members.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (signature.clusterId != clusterId(sourceId)) {
+            clusters.put(signature.clusterId, members);
+            return Collections.emptyList();
+        }
+        long clusterId = clusterId(members.get(0).sourceId);
+        for (Signature member : members) {
+            member.clusterId = clusterId;
+        }
+        List<Signature> existing = clusters.get(clusterId);
+        if (existing != null) {
+            // only when the index was written with inconsistent clusters
+            members.addAll(0, existing);
+        }
+        clusters.put(clusterId, members);
+        return new ArrayList<>(members);
+    }
+
+    synchronized int size() {
+        return bySourceId.size();
+    }
+
+    private Signature find(char[] minHashes) {
+        for (int band = 0; band < BANDS; band++) {
+            List<Signature> bucket = bands.get(band).get(bandKey(minHashes, band));
+            if (bucket == null) {
+                continue;
+            }
+            for (Signature candidate : bucket) {
+                if (similarity(candidate.minHashes, minHashes) >= MIN_SIMILARITY) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static double similarity(char[] a, char[] b) {
+        int equal = 0;
+        for (int h = 0; h < HASHES; h++) {
+            if (a[h] == b[h]) {
+                equal++;
+            }
+        }
+        return (double) equal / HASHES;
+    }
+
+    private void add(Signature signature) {
+        bySourceId.put(signature.sourceId, signature);
+        List<Signature> members = clusters.get(signature.clusterId);
+        if (members == null) {
+            members = new ArrayList<>(1);
+            clusters.put(signature.clusterId, members);
+        }
+        members.add(signature);
+        for (int band = 0; band < BANDS; band++) {
+            Map<Long, List<Signature>> buckets = bands.get(band);
+            Long key = bandKey(signature.minHashes, band);
+            List<Signature> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<>(1);
+                buckets.put(key, bucket);
+            }
+            bucket.add(signature);
+        }
+    }
+
+    // the ROWS 16-bit values of the band packed into one long
+    private static long bandKey(char[] minHashes, int band) {
+        long key = 0;
+        for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+            key = key << 16 | minHashes[row];
+        }
+        return key;
+    }
+}
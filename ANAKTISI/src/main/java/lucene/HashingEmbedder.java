@@ -0,0 +1,93 @@
+package lucene;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// Deterministic embedding that needs no model files: the stemmed words and word pairs of the text
+// are hashed into a fixed number of dimensions with a random sign each, weighted by 1 + log(tf) and
+// normalised. Texts sharing vocabulary end up close together, so it captures lexical rather than
+// semantic similarity; a bundled model can be plugged in through TextEmbedder instead.
+public class HashingEmbedder implements TextEmbedder {
+    public static final int DEFAULT_DIMENSION = 256;
+    private static final int SIGN_SEED = 0x5bd1e995;
+
+    private final int dimension;
+    private final Analyzer analyzer = new EnglishAnalyzer();
+
+    public HashingEmbedder() {
+        this(DEFAULT_DIMENSION);
+    }
+
+    public HashingEmbedder(int dimension) {
+        this.dimension = dimension;
+    }
+
+    @Override
+    public String id() {
+        return "hashing-" + dimension + "-v1";
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        Map<String, Integer> features = new HashMap<>();
+        try (TokenStream stream = analyzer.tokenStream("", text)) {
+            CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            String previous = null;
+            while (stream.incrementToken()) {
+                String term = termAttribute.toString();
+                count(features, term);
+                if (previous != null) {
+                    count(features, previous + ' ' + term);
+                }
+                previous = term;
+            }
+            stream.end();
+        } catch (IOException e) {
+            // analysing a String does no I/O
+            throw new UncheckedIOException(e);
+        }
+        if (features.isEmpty()) {
+            return null;
+        }
+
+        float[] vector = new float[dimension];
+        for (Map.Entry<String, Integer> feature : features.entrySet()) {
+            BytesRef bytes = new BytesRef(feature.getKey());
+            int slot = Math.floorMod(StringHelper.murmurhash3_x86_32(bytes, 0), dimension);
+            float sign = StringHelper.murmurhash3_x86_32(bytes, SIGN_SEED) < 0 ? -1f : 1f;
+            vector[slot] += sign * (float) (1 + Math.log(feature.getValue()));
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return null;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dimension; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static void count(Map<String, Integer> features, String feature) {
+        Integer count = features.get(feature);
+        features.put(feature, count == null ? 1 : count + 1);
+    }
+}
@@ -0,0 +1,54 @@
+package lucene;
+
+import org.apache.lucene.codecs.KnnVectorsFormat;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99Codec;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswScalarQuantizedVectorsFormat;
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
+import org.apache.lucene.search.suggest.document.Completion99PostingsFormat;
+
+// The default codec with per-field overrides. Readers need no special setup: the per-field formats
+// are recorded in the segments and looked up by name.
+class IndexCodec extends Lucene99Codec {
+    private final PostingsFormat completionFormat = new Completion99PostingsFormat();
+    private final KnnVectorsFormat embeddingFormat;
+    private final String vectorFormat;
+
+    // maxConn and beamWidth shape the HNSW graph of the embedding field; quantized keeps an int8
+    // copy of the vectors that the graph is searched with
+    IndexCodec(int maxConn, int beamWidth, boolean quantized) {
+        embeddingFormat = quantized
+                ? new Lucene99HnswScalarQuantizedVectorsFormat(maxConn, beamWidth)
+                : new Lucene99HnswVectorsFormat(maxConn, beamWidth);
+        vectorFormat = (quantized ? "hnsw_int8" : "hnsw") + "," + maxConn + "," + beamWidth;
+    }
+
+    // the vector settings as stored in the commit data, so later merges keep writing the same format
+    String getVectorFormat() {
+        return vectorFormat;
+    }
+
+    static IndexCodec forVectorFormat(String vectorFormat) {
+        String[] parts = vectorFormat.split(",");
+        if (parts.length != 3 || !(parts[0].equals("hnsw") || parts[0].equals("hnsw_int8"))) {
+            throw new IllegalArgumentException("Unknown vector format " + vectorFormat);
+        }
+        return new IndexCodec(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), parts[0].equals("hnsw_int8"));
+    }
+
+    @Override
+    public PostingsFormat getPostingsFormatForField(String field) {
+        if (Analyzers.TITLE_SUGGEST_FIELD.equals(field)) {
+            return completionFormat;
+        }
+        return super.getPostingsFormatForField(field);
+    }
+
+    @Override
+    public KnnVectorsFormat getKnnVectorsFormatForField(String field) {
+        if (Indexer.EMBEDDING_FIELD.equals(field)) {
+            return embeddingFormat;
+        }
+        return super.getKnnVectorsFormatForField(field);
+    }
+}
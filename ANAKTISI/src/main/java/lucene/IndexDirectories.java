@@ -0,0 +1,57 @@
+package lucene;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+class IndexDirectories {
+    // terms dictionaries, doc values, points and norms are read by almost every query and are small
+    // next to the postings and stored fields, which stay lazy. A compound file (.cfs) holds all of a
+    // segment's files and is preloaded whole; IngestProfile.STEADY writes them for flushed segments
+    // and merged ones below a tenth of the index, so they stay small too.
+    static final Set<String> DEFAULT_PRELOAD_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "tim", "tip", "tmd", "dvd", "dvm", "kdd", "kdi", "kdm", "nvd", "nvm", "cfs")));
+
+    private IndexDirectories() {
+    }
+
+    static Directory open(String indexDir, DirectoryMode mode, Set<String> preloadExtensions) throws IOException {
+        Path path = Paths.get(indexDir);
+        switch (mode) {
+            case MMAP:
+                MMapDirectory directory = new MMapDirectory(path);
+                directory.setPreload(preloadPredicate(preloadExtensions));
+                return directory;
+            case NIO:
+                return new NIOFSDirectory(path);
+            default:
+                return FSDirectory.open(path);
+        }
+    }
+
+    private static BiPredicate<String, IOContext> preloadPredicate(final Set<String> extensions) {
+        if (extensions.isEmpty()) {
+            return MMapDirectory.NO_FILES;
+        }
+        return new BiPredicate<String, IOContext>() {
+            @Override
+            public boolean test(String fileName, IOContext context) {
+                // segments opened only to be merged away are read once, sequentially
+                return context.context != IOContext.Context.MERGE
+                        && extensions.contains(IndexFileNames.getExtension(fileName));
+            }
+        };
+    }
+}
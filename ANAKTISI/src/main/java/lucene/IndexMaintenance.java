@@ -0,0 +1,183 @@
+package lucene;
+
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.store.Directory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Offline upkeep of an index built by Indexer: per-segment statistics, force-merging to a few
+// segments after a bulk load and merging away documents deleted by re-indexing. A sharded index
+// is maintained one shard at a time. The index must not be open in an Indexer at the same time.
+public class IndexMaintenance {
+    private static final long PROGRESS_INTERVAL_MILLIS = 2000;
+
+    private final String indexDir;
+    private final IndexerConfig indexerConfig;
+    private final PrintStream out;
+
+    public IndexMaintenance(String indexDir) {
+        this(indexDir, new IndexerConfig(), System.out);
+    }
+
+    // merges run with the merge policy and scheduler settings of indexerConfig
+    public IndexMaintenance(String indexDir, IndexerConfig indexerConfig, PrintStream out) {
+        this.indexDir = indexDir;
+        this.indexerConfig = indexerConfig;
+        this.out = out;
+    }
+
+    private List<String> indexDirs() throws IOException {
+        int shards = Shards.count(indexDir);
+        if (shards == 0) {
+            return Collections.singletonList(indexDir);
+        }
+        List<String> dirs = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            dirs.add(Shards.shardDir(indexDir, i));
+        }
+        return dirs;
+    }
+
+    // segments are read sequentially here, so nothing is preloaded
+    private Directory openDirectory(String dir) throws IOException {
+        return IndexDirectories.open(dir, indexerConfig.getDirectoryMode(), Collections.<String>emptySet());
+    }
+
+    public void printStats() throws IOException {
+        for (String dir : indexDirs()) {
+            try (Directory directory = openDirectory(dir)) {
+                printStats(dir, SegmentInfos.readLatestCommit(directory));
+            }
+        }
+    }
+
+    private void printStats(String dir, SegmentInfos infos) throws IOException {
+        long docs = 0;
+        long deleted = 0;
+        long bytes = 0;
+        for (SegmentCommitInfo segment : infos) {
+            docs += segment.info.maxDoc();
+            deleted += segment.getDelCount() + segment.getSoftDelCount();
+            bytes += segment.sizeInBytes();
+        }
+        out.println(String.format(Locale.ROOT, "%s: %d segments, %d docs, %d deleted (%.1f%%), %.1f MB",
+                dir, infos.size(), docs - deleted, deleted, docs > 0 ? 100.0 * deleted / docs : 0, bytes / (1024.0 * 1024.0)));
+        for (SegmentCommitInfo segment : infos) {
+            int segmentDeleted = segment.getDelCount() + segment.getSoftDelCount();
+            out.println(String.format(Locale.ROOT, "  %-8s docs=%-9d deleted=%-8d (%5.1f%%) size=%9.2f MB compound=%-5b source=%s",
+                    segment.info.name, segment.info.maxDoc() - segmentDeleted, segmentDeleted,
+                    segment.info.maxDoc() > 0 ? 100.0 * segmentDeleted / segment.info.maxDoc() : 0,
+                    segment.sizeInBytes() / (1024.0 * 1024.0), segment.info.getUseCompoundFile(),
+                    segment.info.getDiagnostics().get("source")));
+        }
+    }
+
+    // merges every shard down to at most maxSegments segments and commits
+    public void forceMerge(final int maxSegments) throws IOException {
+        for (String dir : indexDirs()) {
+            run(dir, "Force-merging " + dir + " to " + maxSegments + " segment(s)", new WriterTask() {
+                @Override
+                public void run(IndexWriter writer) throws IOException {
+                    writer.forceMerge(maxSegments);
+                }
+            });
+        }
+    }
+
+    // merges every segment with more than pctAllowed percent deleted documents and commits
+    public void expungeDeletes(final double pctAllowed) throws IOException {
+        for (String dir : indexDirs()) {
+            run(dir, "Expunging deletes from " + dir, new WriterTask() {
+                @Override
+                public void run(IndexWriter writer) throws IOException {
+                    ((TieredMergePolicy) writer.getConfig().getMergePolicy()).setForceMergeDeletesPctAllowed(pctAllowed);
+                    writer.forceMergeDeletes();
+                }
+            });
+        }
+    }
+
+    private interface WriterTask {
+        void run(IndexWriter writer) throws IOException;
+    }
+
+    private void run(String dir, final String description, WriterTask task) throws IOException {
+        final IndexerMetrics metrics = new IndexerMetrics();
+        IndexWriterConfig config = Indexer.newWriterConfig(indexerConfig, metrics, indexerConfig.getRAMBufferSizeMB());
+        config.setOpenMode(IndexWriterConfig.OpenMode.APPEND);
+        try (Directory directory = openDirectory(dir)) {
+            SegmentInfos infos = SegmentInfos.readLatestCommit(directory);
+            // merged vectors are written in the format the index was built with
+            String vectorFormat = infos.getUserData().get(Indexer.VECTOR_FORMAT_KEY);
+            if (vectorFormat != null) {
+                config.setCodec(IndexCodec.forVectorFormat(vectorFormat));
+            }
+            out.println(description);
+            printStats(dir, infos);
+            run(directory, config, metrics, task);
+            printStats(dir, SegmentInfos.readLatestCommit(directory));
+        }
+    }
+
+    private void run(Directory directory, IndexWriterConfig config, final IndexerMetrics metrics, WriterTask task) throws IOException {
+        try (IndexWriter writer = new IndexWriter(directory, config)) {
+            final long start = System.nanoTime();
+            ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+            progress.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    reportProgress(metrics, start);
+                }
+            }, PROGRESS_INTERVAL_MILLIS, PROGRESS_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            try {
+                task.run(writer);
+                writer.commit();
+            } finally {
+                progress.shutdownNow();
+            }
+            reportProgress(metrics, start);
+        }
+    }
+
+    private void reportProgress(IndexerMetrics metrics, long start) {
+        out.println(String.format(Locale.ROOT, "  %d merges done (%d docs), %d running, %.1f s",
+                metrics.getMergeCount(), metrics.getMergedDocs(), metrics.getRunningMerges(),
+                (System.nanoTime() - start) / 1_000_000_000.0));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java lucene.IndexMaintenance <index dir> stats");
+            System.out.println("       java lucene.IndexMaintenance <index dir> force-merge [max segments]");
+            System.out.println("       java lucene.IndexMaintenance <index dir> expunge-deletes [max deleted percent]");
+            return;
+        }
+        // nothing is searching or indexing meanwhile, so merges may use the bulk settings
+        IndexMaintenance maintenance = new IndexMaintenance(args[0], new IndexerConfig().setIngestProfile(IngestProfile.BULK), System.out);
+        switch (args[1]) {
+            case "stats":
+                maintenance.printStats();
+                break;
+            case "force-merge":
+                maintenance.forceMerge(args.length > 2 ? Integer.parseInt(args[2]) : 1);
+                break;
+            case "expunge-deletes":
+                maintenance.expungeDeletes(args.length > 2 ? Double.parseDouble(args[2]) : 10);
+                break;
+            default:
+                System.out.println("Unknown command " + args[1] + ", expected stats, force-merge or expunge-deletes");
+        }
+    }
+}
@@ -1,142 +1,959 @@
 package lucene;
 
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.BinaryDocValuesField;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.KnnFloatVectorField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.SortedDocValuesField;
 import org.apache.lucene.document.StringField;
 import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SimpleMergedSegmentWarmer;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.index.VectorSimilarityFunction;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.suggest.document.SuggestField;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
-
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
-import com.opencsv.exceptions.CsvValidationException;
+import org.apache.lucene.store.NRTCachingDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.InfoStream;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
+import javax.management.ObjectName;
 import org.apache.commons.csv.*;
 
 public class Indexer {
-    private IndexWriter writer;
+    // one per shard, null for the shards that are not open while another one is rebuilt
+    private Directory[] directories;
+    private IndexWriter[] writers;
+    private final List<IndexWriter> openWriters = new ArrayList<>();
     private PrintWriter logWriter;
-    private static final Pattern LATIN_PATTERN = Pattern.compile("^[\\p{L}\\p{N}\\p{P}\\p{Z}\\p{M}\\s]+$");
+    private IndexerConfig indexerConfig;
+    private final AtomicLong docsIndexed = new AtomicLong();
+    private final AtomicLong docsUnchanged = new AtomicLong();
+    private final IndexerMetrics metrics = new IndexerMetrics();
+    private ObjectName metricsName;
+    // content hash of every document in the index that has not been seen yet in an incremental run
+    private Map<String, BytesRef> unseenHashes;
+    // signatures of the indexed full texts, null when DedupMode.OFF
+    private DuplicateDetector duplicates;
+    // content hash and signature of every near-duplicate an incremental DedupMode.SKIP run left out,
+    // kept in the index by skippedDocument so that later runs do not compute the signature again
+    private final Map<String, SkippedPaper> skippedPapers = new ConcurrentHashMap<>();
+    // skipped papers that have not been seen yet in an incremental run
+    private Set<String> unseenSkipped;
+    // set by stopIndexing, never cleared
+    private volatile boolean stopRequested;
+    private static final int QUEUE_SIZE_PER_THREAD = 64;
+    // records themselves are never logged, only skipped ones, checkpoints and this progress line
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int MAX_CONSECUTIVE_PARSE_ERRORS = 1000;
+    private static final String[] END_OF_INPUT = new String[0];
+
+    // bump whenever the indexed fields change so that existing indexes are rebuilt
+    static final String SCHEMA_VERSION = "6";
+    static final String SCHEMA_VERSION_KEY = "schema_version";
+    static final String DATASET_KEY = "dataset";
+    static final String CHECKPOINT_OFFSET_KEY = "checkpoint_offset";
+    static final String CHECKPOINT_RECORD_KEY = "checkpoint_record";
+    static final String EMBEDDER_KEY = "embedder";
+    static final String VECTOR_FORMAT_KEY = "vector_format";
+    static final String DEDUP_KEY = "dedup";
+    public static final String EMBEDDING_FIELD = "embedding";
+    private static final int MAX_SORT_TITLE_LENGTH = 256;
+    private static final Pattern SUGGEST_RESERVED_CHARS = Pattern.compile("[\\u0000\\u001e\\u001f]");
+    // text fields keep offsets in the postings so the highlighter never re-analyzes them
+    private static final FieldType STORED_TEXT_TYPE = textWithOffsets(TextField.TYPE_STORED);
+    private static final FieldType UNSTORED_TEXT_TYPE = textWithOffsets(TextField.TYPE_NOT_STORED);
+    // prefixes are only matched, never scored or highlighted
+    private static final FieldType PREFIX_TYPE = prefixType();
 
     public Indexer(String indexDir, String logFilePath) throws IOException {
-        Directory dir = FSDirectory.open(Paths.get(indexDir));
-        Analyzer analyzer = new StandardAnalyzer();
-        IndexWriterConfig config = new IndexWriterConfig(analyzer);
-        writer = new IndexWriter(dir, config);
+        this(indexDir, logFilePath, new IndexerConfig());
+    }
+
+    public Indexer(String indexDir, String logFilePath, IndexerConfig indexerConfig) throws IOException {
+        this.indexerConfig = indexerConfig;
+        int shards = indexerConfig.getShards();
+        int rebuildShard = indexerConfig.getRebuildShard();
+        int existingShards = Shards.count(indexDir);
+        if (existingShards != 0 && existingShards != shards) {
+            throw new IllegalArgumentException("Index " + indexDir + " has " + existingShards + " shards but " + shards + " were configured");
+        }
+        // the shards would be written next to the existing segments, which no searcher would see again
+        if (existingShards == 0 && shards > 1 && Shards.hasSegments(indexDir)) {
+            throw new IllegalArgumentException("Index " + indexDir + " is not sharded but " + shards + " shards were configured, index into an empty directory instead");
+        }
+        if (rebuildShard >= shards || (rebuildShard >= 0 && shards == 1)) {
+            throw new IllegalArgumentException("Cannot rebuild shard " + rebuildShard + " of an index with " + shards + " shard(s)");
+        }
         logWriter = new PrintWriter(logFilePath, StandardCharsets.UTF_8);
+
+        directories = new Directory[shards];
+        writers = new IndexWriter[shards];
+        int openShards = rebuildShard >= 0 ? 1 : shards;
+        for (int shard = 0; shard < shards; shard++) {
+            if (rebuildShard < 0 || rebuildShard == shard) {
+                openShard(shard, shards == 1 ? indexDir : Shards.shardDir(indexDir, shard), openShards);
+            }
+        }
+        log("Opened " + indexDir + (shards == 1 ? " unsharded" : " with " + shards + " shards"));
+        if (indexerConfig.getDedupMode() != DedupMode.OFF) {
+            duplicates = new DuplicateDetector();
+            loadSignatures();
+        }
+        metricsName = MetricsRegistry.register(metrics, "Indexer");
+    }
+
+    private void openShard(int shard, String shardDir, int openShards) throws IOException {
+        Directory dir = IndexDirectories.open(shardDir, indexerConfig.getDirectoryMode(), indexerConfig.getPreloadExtensions());
+        if (indexerConfig.getNRTCacheMaxMergeSizeMB() > 0 && indexerConfig.getNRTCacheMaxCachedMB() > 0) {
+            dir = new NRTCachingDirectory(dir, indexerConfig.getNRTCacheMaxMergeSizeMB(), indexerConfig.getNRTCacheMaxCachedMB());
+        }
+        directories[shard] = dir;
+        // the shards share the configured buffer
+        IndexWriterConfig config = newWriterConfig(indexerConfig, metrics, indexerConfig.getRAMBufferSizeMB() / openShards);
+
+        Map<String, String> existingData = new HashMap<>();
+        if (indexerConfig.getRebuildShard() == shard) {
+            // replaces the shard's documents in one commit at the end, searchers keep seeing the old ones until then
+            log("Rebuilding shard " + shard + " in " + shardDir);
+            config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        } else if (DirectoryReader.indexExists(dir)) {
+            existingData.putAll(SegmentInfos.readLatestCommit(dir).getUserData());
+            TextEmbedder embedder = indexerConfig.getEmbedder();
+            if (!SCHEMA_VERSION.equals(existingData.get(SCHEMA_VERSION_KEY))) {
+                log("Index schema version " + existingData.get(SCHEMA_VERSION_KEY) + " in " + shardDir + " does not match " + SCHEMA_VERSION + ", rebuilding the index");
+                config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+                existingData.clear();
+            } else if (embedder != null && !embedder.id().equals(existingData.get(EMBEDDER_KEY))) {
+                // vectors of different embedders cannot be compared, so every paper is embedded again
+                log("Index in " + shardDir + " was embedded with " + existingData.get(EMBEDDER_KEY) + ", not " + embedder.id() + ", rebuilding the index");
+                config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+                existingData.clear();
+            } else if (indexerConfig.getDedupMode() != DedupMode.OFF && !DuplicateDetector.SIGNATURE_ID.equals(existingData.get(DEDUP_KEY))) {
+                // papers indexed without a signature could neither be matched nor collapsed
+                log("Index in " + shardDir + " has signatures " + existingData.get(DEDUP_KEY) + ", not " + DuplicateDetector.SIGNATURE_ID + ", rebuilding the index");
+                config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+                existingData.clear();
+            }
+        }
+        IndexWriter writer = new IndexWriter(dir, config);
+
+        existingData.put(SCHEMA_VERSION_KEY, SCHEMA_VERSION);
+        if (indexerConfig.getEmbedder() != null) {
+            existingData.put(EMBEDDER_KEY, indexerConfig.getEmbedder().id());
+            existingData.put(VECTOR_FORMAT_KEY, ((IndexCodec) config.getCodec()).getVectorFormat());
+        }
+        if (indexerConfig.getDedupMode() != DedupMode.OFF) {
+            existingData.put(DEDUP_KEY, DuplicateDetector.SIGNATURE_ID);
+        }
+        writer.setLiveCommitData(existingData.entrySet());
+        writers[shard] = writer;
+        openWriters.add(writer);
     }
 
     public void close() throws IOException {
-        writer.close();
+        MetricsRegistry.unregister(metricsName);
+        for (IndexWriter writer : openWriters) {
+            writer.close();
+        }
+        for (Directory directory : directories) {
+            if (directory != null) {
+                directory.close();
+            }
+        }
         logWriter.close();
     }
 
     public void indexFile(String sourceId, String year, String title, String abstractText, String fullText) throws IOException {
+        indexFile(sourceId, year, title, abstractText, fullText, contentHash(sourceId, year, title, abstractText, fullText), null, 0);
+    }
+
+    // turns is null unless the paper has to wait for its turn at the duplicate detector
+    private void indexFile(String sourceId, String year, String title, String abstractText, String fullText, BytesRef contentHash,
+                           DetectorTurns turns, long turn) throws IOException {
+        IndexWriter writer = writerFor(sourceId);
+        if (writer == null) {
+            throw new IllegalArgumentException("Paper " + sourceId + " belongs to a shard that is not being rebuilt");
+        }
+        char[] minHashes = null;
+        long clusterId = 0;
+        SkippedPaper skippedPaper = null;
+        if (duplicates != null) {
+            skippedPaper = skippedPapers.get(sourceId);
+            boolean skippedUnchanged = skippedPaper != null && skippedPaper.contentHash.equals(contentHash);
+            minHashes = skippedUnchanged ? skippedPaper.minHashes : DuplicateDetector.minHashes(fullText);
+            boolean collapse = indexerConfig.getDedupMode() == DedupMode.COLLAPSE;
+            DuplicateDetector.Signature original = null;
+            if (turns != null) {
+                turns.await(turn);
+            }
+            try {
+                // an earlier version of the paper leaves its cluster before this one is matched
+                removeSignature(sourceId);
+                if (minHashes != null) {
+                    // the original's cluster_id changes when its cluster is founded again
+                    synchronized (duplicates) {
+                        original = duplicates.findOrAdd(sourceId, minHashes, collapse);
+                        clusterId = original != null ? original.clusterId : DuplicateDetector.clusterId(sourceId);
+                    }
+                }
+            } finally {
+                if (turns != null) {
+                    turns.finish(turn);
+                }
+            }
+            if (minHashes != null) {
+                if (original != null) {
+                    metrics.recordDuplicate();
+                    if (collapse) {
+                        log("Paper " + sourceId + " is a near-duplicate of " + original.sourceId);
+                    } else {
+                        if (!skippedUnchanged) {
+                            log("Paper " + sourceId + " is a near-duplicate of " + original.sourceId + ", skipping it");
+                            if (indexerConfig.isIncremental()) {
+                                // an earlier version of the paper may be indexed
+                                writer.deleteDocuments(new Term("source_id", sourceId));
+                                writer.updateDocument(new Term(DuplicateDetector.SKIPPED_ID_FIELD, sourceId), skippedDocument(sourceId, contentHash, minHashes));
+                                skippedPapers.put(sourceId, new SkippedPaper(contentHash, minHashes));
+                            }
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+
         Document doc = new Document();
         doc.add(new StringField("source_id", sourceId, Field.Store.YES));
+        doc.add(new SortedDocValuesField("source_id", new BytesRef(sourceId)));
+        doc.add(new BinaryDocValuesField("content_hash", contentHash));
         doc.add(new StringField("year", year, Field.Store.YES));
-        doc.add(new TextField("title", title, Field.Store.YES));
-        doc.add(new TextField("abstract", abstractText, Field.Store.YES));
-        doc.add(new TextField("full_text", fullText, Field.Store.YES));
-        writer.addDocument(doc);
+        Integer yearValue = parseYear(year);
+        if (yearValue != null) {
+            doc.add(new IntPoint("year_value", yearValue));
+            doc.add(new NumericDocValuesField("year_value", yearValue));
+        }
+        doc.add(new Field("title", title, STORED_TEXT_TYPE));
+        doc.add(new SortedDocValuesField("title_sort", new BytesRef(sortableTitle(title))));
+        doc.add(new Field(Analyzers.TITLE_PREFIX_FIELD, title, PREFIX_TYPE));
+        String suggestion = suggestionKey(title);
+        if (!suggestion.isEmpty()) {
+            // newer papers are suggested first
+            doc.add(new SuggestField(Analyzers.TITLE_SUGGEST_FIELD, suggestion, yearValue != null ? Math.max(yearValue, 0) : 0));
+        }
+        doc.add(new Field("abstract", abstractText, STORED_TEXT_TYPE));
+        doc.add(new Field("full_text", fullText, UNSTORED_TEXT_TYPE));
+        doc.add(new BinaryDocValuesField(DocumentStore.FULL_TEXT_FIELD, DocumentStore.compress(fullText)));
+        if (indexerConfig.getEmbedder() != null) {
+            float[] embedding = indexerConfig.getEmbedder().embed(title + "\n" + abstractText);
+            if (embedding != null) {
+                doc.add(new KnnFloatVectorField(EMBEDDING_FIELD, embedding, VectorSimilarityFunction.DOT_PRODUCT));
+            }
+        }
+        if (minHashes != null) {
+            doc.add(new BinaryDocValuesField(DuplicateDetector.SIGNATURE_FIELD, DuplicateDetector.toBytes(minHashes)));
+            doc.add(new NumericDocValuesField(DuplicateDetector.CLUSTER_FIELD, clusterId));
+        }
+        if (indexerConfig.isIncremental()) {
+            writer.updateDocument(new Term("source_id", sourceId), doc);
+            if (skippedPaper != null) {
+                // skipped by an earlier run, but its original has changed or is gone
+                writer.deleteDocuments(new Term(DuplicateDetector.SKIPPED_ID_FIELD, sourceId));
+                skippedPapers.remove(sourceId);
+            }
+        } else {
+            writer.addDocument(doc);
+        }
+        if (minHashes != null) {
+            // the cluster may have been founded again by another thread while the document was being
+            // written, when moving the paper to the new cluster_id found nothing to update yet
+            synchronized (duplicates) {
+                Long current = duplicates.clusterIdOf(sourceId);
+                if (current != null && current != clusterId) {
+                    writer.updateNumericDocValue(new Term("source_id", sourceId), DuplicateDetector.CLUSTER_FIELD, current);
+                }
+            }
+        }
+        docsIndexed.incrementAndGet();
+        metrics.recordDocument();
+    }
 
-        
-        logWriter.println("Abstract: " + abstractText);
-        logWriter.println("Full Text: " + fullText);
-        logWriter.flush(); 
+    // Stands in for a near-duplicate left out by DedupMode.SKIP so that later incremental runs know its
+    // content and signature. It has no source_id and no text, year or vector fields, so searches over
+    // the papers never return it.
+    private static Document skippedDocument(String sourceId, BytesRef contentHash, char[] minHashes) {
+        Document doc = new Document();
+        doc.add(new StringField(DuplicateDetector.SKIPPED_ID_FIELD, sourceId, Field.Store.NO));
+        doc.add(new SortedDocValuesField(DuplicateDetector.SKIPPED_ID_FIELD, new BytesRef(sourceId)));
+        doc.add(new BinaryDocValuesField("content_hash", contentHash));
+        doc.add(new BinaryDocValuesField(DuplicateDetector.SIGNATURE_FIELD, DuplicateDetector.toBytes(minHashes)));
+        return doc;
     }
 
+    // Removes the paper from the duplicate detector and moves the papers left in a cluster it founded
+    // to their new cluster_id, under the detector's lock. A moved paper that another thread has
+    // registered but not written yet is not in the index to be updated; indexFile checks its cluster
+    // again under the same lock once it is written.
+    private void removeSignature(String sourceId) throws IOException {
+        synchronized (duplicates) {
+            for (DuplicateDetector.Signature moved : duplicates.remove(sourceId)) {
+                IndexWriter writer = writerFor(moved.sourceId);
+                if (writer != null) {
+                    writer.updateNumericDocValue(new Term("source_id", moved.sourceId), DuplicateDetector.CLUSTER_FIELD, moved.clusterId);
+                }
+            }
+        }
+    }
 
+    // also used by IndexMaintenance, merges have to write the completion field with IndexCodec
+    static IndexWriterConfig newWriterConfig(IndexerConfig indexerConfig, IndexerMetrics metrics, double ramBufferSizeMB) {
+        Analyzer analyzer = Analyzers.indexAnalyzer();
+        IndexWriterConfig config = new IndexWriterConfig(analyzer);
+        config.setRAMBufferSizeMB(ramBufferSizeMB);
+        config.setMaxBufferedDocs(indexerConfig.getMaxBufferedDocs());
+        config.setCodec(new IndexCodec(indexerConfig.getVectorMaxConn(), indexerConfig.getVectorBeamWidth(), indexerConfig.isVectorQuantization()));
+        // near-real-time readers see merged segments only after they have been opened once
+        config.setMergedSegmentWarmer(new SimpleMergedSegmentWarmer(InfoStream.NO_OUTPUT));
+        config.setInfoStream(metrics.newInfoStream());
 
-    public void indexDataset(String datasetPath) throws IOException, CsvValidationException {
-        final int maxLines = 400;
-        int currentLine = 0;
-        boolean isFullText = false;
-        StringBuilder entryBuilder = new StringBuilder();
+        TieredMergePolicy mergePolicy = new TieredMergePolicy();
+        mergePolicy.setSegmentsPerTier(indexerConfig.getSegmentsPerTier());
+        mergePolicy.setMaxMergeAtOnce(indexerConfig.getMaxMergeAtOnce());
+        mergePolicy.setFloorSegmentMB(indexerConfig.getFloorSegmentMB());
+        mergePolicy.setMaxMergedSegmentMB(indexerConfig.getMaxMergedSegmentMB());
+        mergePolicy.setDeletesPctAllowed(indexerConfig.getDeletesPctAllowed());
+        if (!indexerConfig.isUseCompoundFile()) {
+            mergePolicy.setNoCFSRatio(0.0);
+        }
+        config.setMergePolicy(mergePolicy);
+        config.setUseCompoundFile(indexerConfig.isUseCompoundFile());
+
+        ConcurrentMergeScheduler mergeScheduler = metrics.newMergeScheduler();
+        mergeScheduler.setMaxMergesAndThreads(indexerConfig.getMaxMergeCount(), indexerConfig.getMaxMergeThreads());
+        config.setMergeScheduler(mergeScheduler);
+        return config;
+    }
+
+    private static FieldType textWithOffsets(FieldType base) {
+        FieldType type = new FieldType(base);
+        type.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+        type.freeze();
+        return type;
+    }
+
+    private static FieldType prefixType() {
+        FieldType type = new FieldType(TextField.TYPE_NOT_STORED);
+        type.setIndexOptions(IndexOptions.DOCS);
+        type.setOmitNorms(true);
+        type.freeze();
+        return type;
+    }
+
+    private static Integer parseYear(String year) {
+        try {
+            return Integer.valueOf(year.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // SuggestField reserves a few control characters as separators
+    private static String suggestionKey(String title) {
+        return SUGGEST_RESERVED_CHARS.matcher(title).replaceAll(" ").trim();
+    }
+
+    private static String sortableTitle(String title) {
+        String normalized = title.trim().toLowerCase(Locale.ROOT);
+        return normalized.length() > MAX_SORT_TITLE_LENGTH ? normalized.substring(0, MAX_SORT_TITLE_LENGTH) : normalized;
+    }
+
+    private void indexRecord(String[] fields, DetectorTurns turns, long turn) throws IOException {
+        if (writerFor(fields[0]) == null) {
+            // belongs to a shard that is not being rebuilt
+            return;
+        }
+        if (unseenSkipped != null) {
+            unseenSkipped.remove(fields[0]);
+        }
+        BytesRef contentHash = contentHash(fields[0], fields[1], fields[2], fields[3], fields[4]);
+        if (unseenHashes != null) {
+            BytesRef existing = unseenHashes.remove(fields[0]);
+            if (contentHash.equals(existing)) {
+                docsUnchanged.incrementAndGet();
+                return;
+            }
+        }
+        indexFile(fields[0], fields[1], fields[2], fields[3], fields[4], contentHash, turns, turn);
+    }
+
+    private static BytesRef contentHash(String... fields) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String field : fields) {
+                digest.update(field.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return new BytesRef(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // null when the paper's shard is not open
+    private IndexWriter writerFor(String sourceId) {
+        return writers.length == 1 ? writers[0] : writers[Shards.shardOf(sourceId, writers.length)];
+    }
+
+    // the writers of the open shards, in shard order
+    IndexWriter[] getWriters() {
+        return openWriters.toArray(new IndexWriter[0]);
+    }
+
+    // Makes a running indexDataset return after the records already read, and every later one return at
+    // once, e.g. before close. What was indexed so far is committed by close; a resumed or incremental
+    // run picks up the rest.
+    public void stopIndexing() {
+        stopRequested = true;
+    }
+
+    public long getDocsIndexed() {
+        return docsIndexed.get();
+    }
+
+    public IndexerMetrics getMetrics() {
+        return metrics;
+    }
+
+
+
+    public long indexDataset(String datasetPath) throws IOException {
+        return indexDataset(datasetPath, 1);
+    }
+
+    public long indexDataset(String datasetPath, int threads) throws IOException {
+        if (stopRequested) {
+            return 0;
+        }
+        long startDocs = docsIndexed.get();
+        long startTime = System.nanoTime();
+
+        if (indexerConfig.isIncremental()) {
+            if (datasetId(datasetPath).equals(commitData().get(DATASET_KEY)) && !commitData().containsKey(CHECKPOINT_OFFSET_KEY)) {
+                log("Dataset " + datasetPath + " is unchanged since the last run, nothing to index");
+                return 0;
+            }
+            unseenHashes = loadContentHashes();
+            unseenSkipped = ConcurrentHashMap.newKeySet();
+            unseenSkipped.addAll(skippedPapers.keySet());
+        }
+
+        long startUnchanged = docsUnchanged.get();
+        RecordHandler handler = threads <= 1 ? new SerialHandler() : new ParallelHandler(threads);
+        try {
+            readDataset(datasetPath, handler);
+        } finally {
+            handler.finish();
+        }
+
+        if (stopRequested) {
+            // the rest of the dataset is left to the next run, so nothing counts as deleted yet
+            unseenHashes = null;
+            unseenSkipped = null;
+            log("Indexing stopped after " + (docsIndexed.get() - startDocs) + " documents");
+            return docsIndexed.get() - startDocs;
+        }
+        if (unseenHashes != null) {
+            for (String sourceId : unseenHashes.keySet()) {
+                writerFor(sourceId).deleteDocuments(new Term("source_id", sourceId));
+                if (duplicates != null) {
+                    removeSignature(sourceId);
+                }
+            }
+            for (String sourceId : unseenSkipped) {
+                writerFor(sourceId).deleteDocuments(new Term(DuplicateDetector.SKIPPED_ID_FIELD, sourceId));
+                skippedPapers.remove(sourceId);
+            }
+            log("Incremental run: " + (docsIndexed.get() - startDocs) + " added or changed, "
+                    + (docsUnchanged.get() - startUnchanged) + " unchanged, " + (unseenHashes.size() + unseenSkipped.size()) + " deleted");
+            unseenHashes = null;
+            unseenSkipped = null;
+        }
+        finishCheckpoints(datasetId(datasetPath));
+        return logThroughput(docsIndexed.get() - startDocs, System.nanoTime() - startTime);
+    }
+
+    private Map<String, BytesRef> loadContentHashes() throws IOException {
+        Map<String, BytesRef> hashes = new ConcurrentHashMap<>();
+        for (IndexWriter writer : openWriters) {
+            loadContentHashes(writer, hashes);
+        }
+        return hashes;
+    }
+
+    private static void loadContentHashes(IndexWriter writer, Map<String, BytesRef> hashes) throws IOException {
+        try (DirectoryReader reader = DirectoryReader.open(writer)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                SortedDocValues sourceIds = DocValues.getSorted(leaf.reader(), "source_id");
+                BinaryDocValues contentHashes = DocValues.getBinary(leaf.reader(), "content_hash");
+                Bits liveDocs = leaf.reader().getLiveDocs();
+                for (int doc = sourceIds.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = sourceIds.nextDoc()) {
+                    if (liveDocs != null && !liveDocs.get(doc)) {
+                        continue;
+                    }
+                    String sourceId = sourceIds.lookupOrd(sourceIds.ordValue()).utf8ToString();
+                    hashes.put(sourceId, contentHashes.advanceExact(doc) ? BytesRef.deepCopyOf(contentHashes.binaryValue()) : new BytesRef());
+                }
+            }
+        }
+    }
+
+    // a rebuilt shard is only compared with itself, the other shards are not open
+    private void loadSignatures() throws IOException {
+        for (IndexWriter writer : openWriters) {
+            try (DirectoryReader reader = DirectoryReader.open(writer)) {
+                for (LeafReaderContext leaf : reader.leaves()) {
+                    SortedDocValues sourceIds = DocValues.getSorted(leaf.reader(), "source_id");
+                    SortedDocValues skippedIds = DocValues.getSorted(leaf.reader(), DuplicateDetector.SKIPPED_ID_FIELD);
+                    BinaryDocValues contentHashes = DocValues.getBinary(leaf.reader(), "content_hash");
+                    BinaryDocValues signatures = DocValues.getBinary(leaf.reader(), DuplicateDetector.SIGNATURE_FIELD);
+                    NumericDocValues clusterIds = DocValues.getNumeric(leaf.reader(), DuplicateDetector.CLUSTER_FIELD);
+                    Bits liveDocs = leaf.reader().getLiveDocs();
+                    for (int doc = signatures.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = signatures.nextDoc()) {
+                        if (liveDocs != null && !liveDocs.get(doc)) {
+                            continue;
+                        }
+                        char[] minHashes = DuplicateDetector.fromBytes(signatures.binaryValue());
+                        if (minHashes == null) {
+                            continue;
+                        }
+                        if (sourceIds.advanceExact(doc) && clusterIds.advanceExact(doc)) {
+                            duplicates.load(sourceIds.lookupOrd(sourceIds.ordValue()).utf8ToString(), minHashes, clusterIds.longValue());
+                        } else if (indexerConfig.isIncremental() && skippedIds.advanceExact(doc) && contentHashes.advanceExact(doc)) {
+                            skippedPapers.put(skippedIds.lookupOrd(skippedIds.ordValue()).utf8ToString(),
+                                    new SkippedPaper(BytesRef.deepCopyOf(contentHashes.binaryValue()), minHashes));
+                        }
+                    }
+                }
+            }
+        }
+        if (duplicates.size() > 0 || !skippedPapers.isEmpty()) {
+            log("Loaded the signatures of " + duplicates.size() + " indexed papers and " + skippedPapers.size() + " skipped ones");
+        }
+    }
+
+    private void readDataset(String datasetPath, RecordHandler handler) throws IOException {
+        String datasetId = datasetId(datasetPath);
+        long offset = 0;
+        long recordNumber = 1;
+
+        Map<String, String> commitData = commitData();
+        // an incremental run has to see every row to know which documents were deleted
+        if (indexerConfig.isResume() && !indexerConfig.isIncremental() && datasetId.equals(commitData.get(DATASET_KEY)) && commitData.containsKey(CHECKPOINT_OFFSET_KEY)) {
+            offset = Long.parseLong(commitData.get(CHECKPOINT_OFFSET_KEY));
+            recordNumber = Long.parseLong(commitData.get(CHECKPOINT_RECORD_KEY));
+            log("Resuming " + datasetPath + " from record " + recordNumber + " at character offset " + offset);
+        }
+
+        long skipped = 0;
+        long sinceCheckpoint = 0;
+        long lastProgress = System.nanoTime();
+        int consecutiveErrors = 0;
 
         try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(datasetPath), StandardCharsets.UTF_8))) {
-            CSVParser parser = CSVFormat.DEFAULT.parse(br);
-            
-            for (CSVRecord record : parser) {
-                currentLine++;
+            skipFully(br, offset);
+            CSVParser parser = new CSVParser(br, CSVFormat.DEFAULT, offset, recordNumber);
+            Iterator<CSVRecord> records = parser.iterator();
 
-                
-                if (currentLine == 1) {
+            while (!stopRequested) {
+                CSVRecord record;
+                try {
+                    if (!records.hasNext()) {
+                        break;
+                    }
+                    record = records.next();
+                    consecutiveErrors = 0;
+                } catch (IllegalStateException e) {
+                    skipped++;
+                    log("Skipping unparsable record: " + e.getMessage());
+                    if (++consecutiveErrors >= MAX_CONSECUTIVE_PARSE_ERRORS) {
+                        throw new IOException("Giving up on " + datasetPath + " after " + consecutiveErrors + " consecutive parse errors", e);
+                    }
                     continue;
                 }
 
-                
-                logWriter.println("Processing line " + currentLine + ": " + record);
-                logWriter.flush();
+                if (record.getRecordNumber() == 1) {
+                    continue;
+                }
 
-                
-                String sourceId = record.get(0);
-                String year = record.get(1);
-                String title = record.get(2);
-                String abstractText = record.get(3);
-                String fullText = record.get(4);
+                // a rebuilt shard is only committed once it is complete
+                int checkpointInterval = indexerConfig.getRebuildShard() >= 0 ? 0 : indexerConfig.getCheckpointInterval();
+                if (checkpointInterval > 0 && sinceCheckpoint >= checkpointInterval) {
+                    handler.awaitIdle();
+                    checkpoint(datasetId, record.getCharacterPosition(), record.getRecordNumber());
+                    sinceCheckpoint = 0;
+                }
 
-                
-                indexFile(sourceId, year, title, abstractText, fullText);
+                if (record.size() < 5) {
+                    skipped++;
+                    log("Skipping record " + record.getRecordNumber() + ": expected 5 columns but found " + record.size());
+                    continue;
+                }
 
-                if (currentLine >= maxLines) {
-                    break;
+                if (System.nanoTime() - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                    log("Read " + record.getRecordNumber() + " records, " + docsIndexed.get() + " documents indexed");
+                    lastProgress = System.nanoTime();
                 }
+
+                handler.accept(new String[]{record.get(0), record.get(1), record.get(2), record.get(3), record.get(4)});
+                sinceCheckpoint++;
             }
+
+            handler.awaitIdle();
         } catch (IOException e) {
-            logWriter.println("Error processing CSV: " + e.getMessage());
-            logWriter.flush();
+            log("Error processing CSV: " + e.getMessage());
             throw e;
         }
+
+        if (skipped > 0) {
+            log("Skipped " + skipped + " records that could not be parsed");
+        }
+    }
+
+    private static void skipFully(BufferedReader reader, long chars) throws IOException {
+        while (chars > 0) {
+            long skipped = reader.skip(chars);
+            if (skipped <= 0) {
+                throw new IOException("Checkpoint offset is past the end of the dataset");
+            }
+            chars -= skipped;
+        }
+    }
+
+    private static String datasetId(String datasetPath) {
+        File file = new File(datasetPath).getAbsoluteFile();
+        return file.getPath() + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    private Map<String, String> commitData() {
+        Map<String, String> data = new HashMap<>();
+        // every open shard carries the same commit data
+        Iterable<Map.Entry<String, String>> live = openWriters.get(0).getLiveCommitData();
+        if (live != null) {
+            for (Map.Entry<String, String> entry : live) {
+                data.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return data;
+    }
+
+    private void checkpoint(String datasetId, long offset, long recordNumber) throws IOException {
+        Map<String, String> data = commitData();
+        data.put(DATASET_KEY, datasetId);
+        data.put(CHECKPOINT_OFFSET_KEY, Long.toString(offset));
+        data.put(CHECKPOINT_RECORD_KEY, Long.toString(recordNumber));
+        commit(data);
+        log("Checkpoint at record " + recordNumber + " (character offset " + offset + "), " + docsIndexed.get() + " documents indexed");
+    }
+
+    private void finishCheckpoints(String datasetId) throws IOException {
+        Map<String, String> data = commitData();
+        data.put(DATASET_KEY, datasetId);
+        data.remove(CHECKPOINT_OFFSET_KEY);
+        data.remove(CHECKPOINT_RECORD_KEY);
+        commit(data);
+    }
+
+    private void commit(Map<String, String> data) throws IOException {
+        for (IndexWriter writer : openWriters) {
+            writer.setLiveCommitData(data.entrySet());
+            writer.commit();
+        }
+    }
+
+    private void log(String message) {
+        synchronized (logWriter) {
+            logWriter.println(message);
+            logWriter.flush();
+        }
+    }
+
+    private long logThroughput(long docs, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        double docsPerSecond = seconds > 0 ? docs / seconds : 0;
+        log(String.format("Indexed %d documents in %.2f s (%.1f docs/sec)", docs, seconds, docsPerSecond));
+        try {
+            log(String.format("Index size %.1f MB", indexSizeBytes() / (1024.0 * 1024.0)));
+        } catch (IOException e) {
+            log("Could not determine the index size: " + e.getMessage());
+        }
+        log(metrics.dump());
+        return docs;
+    }
+
+    // bytes used by the files of the last commit of every open shard, files still held in the NRT cache are not counted
+    long indexSizeBytes() throws IOException {
+        long bytes = 0;
+        for (Directory directory : directories) {
+            if (directory == null) {
+                continue;
+            }
+            for (String file : SegmentInfos.readLatestCommit(directory).files(true)) {
+                bytes += directory.fileLength(file);
+            }
+        }
+        return bytes;
+    }
+
+    private static class SkippedPaper {
+        final BytesRef contentHash;
+        final char[] minHashes;
+
+        SkippedPaper(BytesRef contentHash, char[] minHashes) {
+            this.contentHash = contentHash;
+            this.minHashes = minHashes;
+        }
+    }
+
+    private interface RecordHandler {
+        void accept(String[] fields) throws IOException;
+
+        // block until every accepted record has been added to the writer
+        void awaitIdle() throws IOException;
+
+        void finish() throws IOException;
     }
 
+    private class SerialHandler implements RecordHandler {
+        @Override
+        public void accept(String[] fields) throws IOException {
+            indexRecord(fields, null, 0);
+        }
 
+        @Override
+        public void awaitIdle() {
+        }
 
+        @Override
+        public void finish() {
+        }
+    }
 
-    private void processEntry(String entry) throws IOException {
-       
-        CSVParser parser = CSVParser.parse(entry, CSVFormat.DEFAULT);
-        CSVRecord record = parser.iterator().next(); 
-        
-        
-        String sourceId = record.get(0);
-        String year = record.get(1);
-        String title = record.get(2);
-        String abstractText = record.get(3);
-        String fullText = record.get(4);
+    // Records take their turn at the duplicate detector in the order they were read, whichever thread
+    // indexes them, so a parallel run keeps the same papers as originals as a serial one. The
+    // signatures are computed and the documents written outside of the turn.
+    private static class DetectorTurns {
+        private long next;
+        // turns finished before they came up, e.g. by records that were unchanged
+        private final Set<Long> finishedEarly = new HashSet<>();
 
-        
-        indexFile(sourceId, year, title, abstractText, fullText);
+        synchronized void await(long turn) throws IOException {
+            while (next < turn) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the duplicate detector", e);
+                }
+            }
+        }
+
+        // may be called more than once for the same turn
+        synchronized void finish(long turn) {
+            if (turn < next) {
+                return;
+            }
+            finishedEarly.add(turn);
+            while (finishedEarly.remove(next)) {
+                next++;
+            }
+            notifyAll();
+        }
     }
 
+    private class ParallelHandler implements RecordHandler {
+        private final int threads;
+        private final BlockingQueue<String[]> queue;
+        private final ExecutorService workers;
+        private final AtomicReference<IOException> failure = new AtomicReference<>();
+        private final Object idleLock = new Object();
+        private long pending;
+        // records are numbered as they are taken from the queue, which is in the order they were read
+        private final DetectorTurns turns = new DetectorTurns();
+        private final Object takeLock = new Object();
+        private long taken;
+
+        ParallelHandler(int threads) {
+            this.threads = threads;
+            this.queue = new ArrayBlockingQueue<>(threads * QUEUE_SIZE_PER_THREAD);
+            this.workers = Executors.newFixedThreadPool(threads);
+            for (int i = 0; i < threads; i++) {
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        work();
+                    }
+                });
+            }
+        }
+
+        private void work() {
+            try {
+                while (true) {
+                    String[] fields;
+                    long turn;
+                    synchronized (takeLock) {
+                        fields = queue.take();
+                        turn = taken++;
+                    }
+                    if (fields == END_OF_INPUT) {
+                        return;
+                    }
+                    // keep draining after a failure so the reader never blocks on a full queue
+                    if (failure.get() == null) {
+                        try {
+                            indexRecord(fields, turns, turn);
+                        } catch (IOException | RuntimeException e) {
+                            failure.compareAndSet(null, e instanceof IOException ? (IOException) e : new IOException(e));
+                        }
+                    }
+                    // records that never reached the detector give up their turn here
+                    turns.finish(turn);
+                    synchronized (idleLock) {
+                        if (--pending == 0) {
+                            idleLock.notifyAll();
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void checkFailure() throws IOException {
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+        }
+
+        @Override
+        public void accept(String[] fields) throws IOException {
+            checkFailure();
+            synchronized (idleLock) {
+                pending++;
+            }
+            try {
+                queue.put(fields);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while queueing records", e);
+            }
+        }
 
+        @Override
+        public void awaitIdle() throws IOException {
+            synchronized (idleLock) {
+                while (pending > 0) {
+                    try {
+                        idleLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for indexing threads", e);
+                    }
+                }
+            }
+            checkFailure();
+        }
 
+        @Override
+        public void finish() throws IOException {
+            try {
+                for (int i = 0; i < threads; i++) {
+                    queue.put(END_OF_INPUT);
+                }
+                workers.shutdown();
+                workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                workers.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for indexing threads", e);
+            }
+            checkFailure();
+        }
+    }
 
     public static void main(String[] args) throws Exception {
         if (args.length < 3) {
-            System.out.println("Usage: java com.example.lucene.Indexer <index dir> <dataset file> <log file>");
+            System.out.println("Usage: java com.example.lucene.Indexer <index dir> <dataset file> <log file> [threads] [ram buffer MB] [incremental|full] [shards] [shard to rebuild]");
             return;
         }
 
         String indexDir = args[0];
         String datasetPath = args[1];
         String logFilePath = args[2];
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 1;
 
-        Indexer indexer = new Indexer(indexDir, logFilePath);
-        indexer.indexDataset(datasetPath);
+        IndexerConfig config = new IndexerConfig();
+        if (args.length > 4) {
+            config.setRAMBufferSizeMB(Double.parseDouble(args[4]));
+        }
+        if (args.length > 5) {
+            config.setIncremental("incremental".equals(args[5]));
+        }
+        if (args.length > 6) {
+            config.setShards(Integer.parseInt(args[6]));
+        }
+        if (args.length > 7) {
+            config.setRebuildShard(Integer.parseInt(args[7]));
+        }
+
+        Indexer indexer = new Indexer(indexDir, logFilePath, config);
+        long startTime = System.nanoTime();
+        long docs = indexer.indexDataset(datasetPath, threads);
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        System.out.println(String.format("Indexed %d documents with %d thread(s) in %.2f s (%.1f docs/sec)", docs, threads, seconds, docs / seconds));
         indexer.close();
     }
 }
-
@@ -0,0 +1,305 @@
+package lucene;
+
+import org.apache.lucene.codecs.lucene99.Lucene99HnswVectorsFormat;
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.IndexWriterConfig;
+
+import java.util.Set;
+
+public class IndexerConfig {
+    private double ramBufferSizeMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+    private int maxBufferedDocs = IndexWriterConfig.DISABLE_AUTO_FLUSH;
+    private int checkpointInterval = 10000;
+    private boolean resume = true;
+    private boolean incremental = false;
+    private DirectoryMode directoryMode = DirectoryMode.MMAP;
+    private Set<String> preloadExtensions = IndexDirectories.DEFAULT_PRELOAD_EXTENSIONS;
+    private double nrtCacheMaxMergeSizeMB = 5.0;
+    private double nrtCacheMaxCachedMB = 60.0;
+    private int shards = 1;
+    private int rebuildShard = -1;
+    private IngestProfile ingestProfile = IngestProfile.STEADY;
+    private double segmentsPerTier = 10;
+    private int maxMergeAtOnce = 10;
+    private double floorSegmentMB = 2;
+    private double maxMergedSegmentMB = 5 * 1024;
+    private double deletesPctAllowed = 20;
+    private boolean useCompoundFile = true;
+    private int maxMergeThreads = ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS;
+    private int maxMergeCount = ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS;
+    private TextEmbedder embedder;
+    private int vectorMaxConn = Lucene99HnswVectorsFormat.DEFAULT_MAX_CONN;
+    private int vectorBeamWidth = Lucene99HnswVectorsFormat.DEFAULT_BEAM_WIDTH;
+    private boolean vectorQuantization = false;
+    private DedupMode dedupMode = DedupMode.OFF;
+
+    public double getRAMBufferSizeMB() {
+        return ramBufferSizeMB;
+    }
+
+    // flush a new segment once buffered documents use this much heap, split evenly between shards
+    public IndexerConfig setRAMBufferSizeMB(double ramBufferSizeMB) {
+        this.ramBufferSizeMB = ramBufferSizeMB;
+        return this;
+    }
+
+    public int getMaxBufferedDocs() {
+        return maxBufferedDocs;
+    }
+
+    // flush a new segment after this many documents, IndexWriterConfig.DISABLE_AUTO_FLUSH to flush by RAM only
+    public IndexerConfig setMaxBufferedDocs(int maxBufferedDocs) {
+        this.maxBufferedDocs = maxBufferedDocs;
+        return this;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    // commit and record the CSV position every this many records, 0 disables checkpoints
+    public IndexerConfig setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    // continue an interrupted run of the same dataset from its last checkpoint
+    public IndexerConfig setResume(boolean resume) {
+        this.resume = resume;
+        return this;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    // update changed rows by source_id, skip unchanged ones and delete rows missing from the dataset
+    public IndexerConfig setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        return this;
+    }
+
+    public DirectoryMode getDirectoryMode() {
+        return directoryMode;
+    }
+
+    public IndexerConfig setDirectoryMode(DirectoryMode directoryMode) {
+        this.directoryMode = directoryMode;
+        return this;
+    }
+
+    public Set<String> getPreloadExtensions() {
+        return preloadExtensions;
+    }
+
+    // file extensions paged into memory when a segment is opened, only used by DirectoryMode.MMAP
+    public IndexerConfig setPreloadExtensions(Set<String> preloadExtensions) {
+        this.preloadExtensions = preloadExtensions;
+        return this;
+    }
+
+    public double getNRTCacheMaxMergeSizeMB() {
+        return nrtCacheMaxMergeSizeMB;
+    }
+
+    public double getNRTCacheMaxCachedMB() {
+        return nrtCacheMaxCachedMB;
+    }
+
+    // keep newly flushed segments up to maxMergeSizeMB in heap, at most maxCachedMB in total, so
+    // near-real-time readers open them without going to disk; 0 disables the cache
+    public IndexerConfig setNRTCache(double maxMergeSizeMB, double maxCachedMB) {
+        this.nrtCacheMaxMergeSizeMB = maxMergeSizeMB;
+        this.nrtCacheMaxCachedMB = maxCachedMB;
+        return this;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    // split the index into this many shards by a hash of source_id, each with its own writer and
+    // directory under the index directory; 1 keeps a single index in the index directory itself
+    public IndexerConfig setShards(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be at least 1");
+        }
+        this.shards = shards;
+        return this;
+    }
+
+    public int getRebuildShard() {
+        return rebuildShard;
+    }
+
+    // rebuild only this shard from the dataset, replacing its documents in a single commit and
+    // leaving the other shards untouched; -1 indexes into every shard
+    public IndexerConfig setRebuildShard(int rebuildShard) {
+        this.rebuildShard = rebuildShard;
+        return this;
+    }
+
+    public IngestProfile getIngestProfile() {
+        return ingestProfile;
+    }
+
+    // sets the RAM buffer and every merge setting below to the profile's values, which can still be
+    // changed one by one afterwards
+    public IndexerConfig setIngestProfile(IngestProfile ingestProfile) {
+        this.ingestProfile = ingestProfile;
+        switch (ingestProfile) {
+            case BULK:
+                int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+                ramBufferSizeMB = 256;
+                segmentsPerTier = 20;
+                maxMergeAtOnce = 20;
+                floorSegmentMB = 16;
+                maxMergedSegmentMB = 5 * 1024;
+                deletesPctAllowed = 33;
+                useCompoundFile = false;
+                maxMergeThreads = threads;
+                maxMergeCount = threads + 5;
+                break;
+            default:
+                ramBufferSizeMB = IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB;
+                segmentsPerTier = 10;
+                maxMergeAtOnce = 10;
+                floorSegmentMB = 2;
+                maxMergedSegmentMB = 5 * 1024;
+                deletesPctAllowed = 20;
+                useCompoundFile = true;
+                maxMergeThreads = ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS;
+                maxMergeCount = ConcurrentMergeScheduler.AUTO_DETECT_MERGES_AND_THREADS;
+        }
+        return this;
+    }
+
+    public double getSegmentsPerTier() {
+        return segmentsPerTier;
+    }
+
+    // segments of about the same size allowed before TieredMergePolicy merges them, higher merges less often
+    public IndexerConfig setSegmentsPerTier(double segmentsPerTier) {
+        this.segmentsPerTier = segmentsPerTier;
+        return this;
+    }
+
+    public int getMaxMergeAtOnce() {
+        return maxMergeAtOnce;
+    }
+
+    public IndexerConfig setMaxMergeAtOnce(int maxMergeAtOnce) {
+        this.maxMergeAtOnce = maxMergeAtOnce;
+        return this;
+    }
+
+    public double getFloorSegmentMB() {
+        return floorSegmentMB;
+    }
+
+    // segments smaller than this are treated as this size, so tiny flushes are merged away early
+    public IndexerConfig setFloorSegmentMB(double floorSegmentMB) {
+        this.floorSegmentMB = floorSegmentMB;
+        return this;
+    }
+
+    public double getMaxMergedSegmentMB() {
+        return maxMergedSegmentMB;
+    }
+
+    // natural merges stop at this size, a force-merge may still go past it
+    public IndexerConfig setMaxMergedSegmentMB(double maxMergedSegmentMB) {
+        this.maxMergedSegmentMB = maxMergedSegmentMB;
+        return this;
+    }
+
+    public double getDeletesPctAllowed() {
+        return deletesPctAllowed;
+    }
+
+    // share of deleted documents tolerated before segments are merged to reclaim them
+    public IndexerConfig setDeletesPctAllowed(double deletesPctAllowed) {
+        this.deletesPctAllowed = deletesPctAllowed;
+        return this;
+    }
+
+    public boolean isUseCompoundFile() {
+        return useCompoundFile;
+    }
+
+    // pack each small segment into one .cfs file, fewer open files at the cost of an extra copy
+    public IndexerConfig setUseCompoundFile(boolean useCompoundFile) {
+        this.useCompoundFile = useCompoundFile;
+        return this;
+    }
+
+    public int getMaxMergeThreads() {
+        return maxMergeThreads;
+    }
+
+    public int getMaxMergeCount() {
+        return maxMergeCount;
+    }
+
+    // merges run at once and merges queued before indexing threads are stalled, see
+    // ConcurrentMergeScheduler.setMaxMergesAndThreads; AUTO_DETECT_MERGES_AND_THREADS for both picks
+    // them from the disk type and core count
+    public IndexerConfig setMergeThreads(int maxMergeThreads, int maxMergeCount) {
+        this.maxMergeThreads = maxMergeThreads;
+        this.maxMergeCount = maxMergeCount;
+        return this;
+    }
+
+    public TextEmbedder getEmbedder() {
+        return embedder;
+    }
+
+    // embed title and abstract of every paper into a vector field for Searcher.hybridSearch, null
+    // disables embeddings; changing the embedder of an existing index rebuilds it
+    public IndexerConfig setEmbedder(TextEmbedder embedder) {
+        this.embedder = embedder;
+        return this;
+    }
+
+    public int getVectorMaxConn() {
+        return vectorMaxConn;
+    }
+
+    public int getVectorBeamWidth() {
+        return vectorBeamWidth;
+    }
+
+    // neighbours per node and candidates considered while building the HNSW graph, higher values
+    // give better recall for slower indexing and larger graphs
+    public IndexerConfig setVectorGraph(int maxConn, int beamWidth) {
+        this.vectorMaxConn = maxConn;
+        this.vectorBeamWidth = beamWidth;
+        return this;
+    }
+
+    public boolean isVectorQuantization() {
+        return vectorQuantization;
+    }
+
+    // search the graph over int8 copies of the vectors, a quarter of the memory for some recall
+    public IndexerConfig setVectorQuantization(boolean vectorQuantization) {
+        this.vectorQuantization = vectorQuantization;
+        return this;
+    }
+
+    public DedupMode getDedupMode() {
+        return dedupMode;
+    }
+
+    // skip or cluster papers whose full text nearly matches one already indexed, the first copy in the
+    // dataset being the original whatever the number of threads; turning it on for an index built
+    // without it rebuilds the index
+    public IndexerConfig setDedupMode(DedupMode dedupMode) {
+        this.dedupMode = dedupMode;
+        return this;
+    }
+}
@@ -0,0 +1,162 @@
+package lucene;
+
+import org.apache.lucene.index.ConcurrentMergeScheduler;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeScheduler;
+import org.apache.lucene.index.SegmentCommitInfo;
+import org.apache.lucene.util.InfoStream;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Ingest rate of one Indexer and how long IndexWriter spends flushing and merging segments.
+// Flush times are read from the writer's own DWPT info messages; merges are timed by the
+// merge scheduler that runs them.
+public class IndexerMetrics implements IndexerMetricsMXBean {
+    private static final String FLUSH_COMPONENT = "DWPT";
+    private static final String FLUSH_TIME_PREFIX = "flush time ";
+
+    private final RateMeter docs = new RateMeter();
+    private final LatencyHistogram flush = new LatencyHistogram();
+    private final LatencyHistogram merge = new LatencyHistogram();
+    private final AtomicLong mergedDocs = new AtomicLong();
+    private final AtomicInteger runningMerges = new AtomicInteger();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    IndexerMetrics() {
+    }
+
+    void recordDocument() {
+        docs.mark();
+    }
+
+    // only enables the component that reports flushes, so every other message is never built
+    InfoStream newInfoStream() {
+        return new InfoStream() {
+            @Override
+            public void message(String component, String message) {
+                if (message.startsWith(FLUSH_TIME_PREFIX)) {
+                    int end = message.indexOf(' ', FLUSH_TIME_PREFIX.length());
+                    try {
+                        double millis = Double.parseDouble(message.substring(FLUSH_TIME_PREFIX.length(), end < 0 ? message.length() : end));
+                        flush.recordNanos((long) (millis * 1_000_000));
+                    } catch (NumberFormatException e) {
+                        // a message that only starts like a flush time
+                    }
+                }
+            }
+
+            @Override
+            public boolean isEnabled(String component) {
+                return FLUSH_COMPONENT.equals(component);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    ConcurrentMergeScheduler newMergeScheduler() {
+        return new ConcurrentMergeScheduler() {
+            @Override
+            protected void doMerge(MergeScheduler.MergeSource mergeSource, MergePolicy.OneMerge merge) throws IOException {
+                int docs = 0;
+                for (SegmentCommitInfo segment : merge.segments) {
+                    docs += segment.info.maxDoc();
+                }
+                long start = System.nanoTime();
+                runningMerges.incrementAndGet();
+                try {
+                    super.doMerge(mergeSource, merge);
+                } finally {
+                    runningMerges.decrementAndGet();
+                }
+                recordMerge(System.nanoTime() - start, docs);
+            }
+        };
+    }
+
+    void recordDuplicate() {
+        duplicates.incrementAndGet();
+    }
+
+    private void recordMerge(long nanos, int docs) {
+        merge.recordNanos(nanos);
+        mergedDocs.addAndGet(docs);
+    }
+
+    @Override
+    public long getDocsIndexed() {
+        return docs.getTotal();
+    }
+
+    // over the last minute
+    @Override
+    public double getDocsPerSecond() {
+        return docs.getRatePerSecond();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flush.getCount();
+    }
+
+    @Override
+    public double getFlushP50Millis() {
+        return flush.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getFlushMaxMillis() {
+        return flush.getMaxMillis();
+    }
+
+    @Override
+    public long getMergeCount() {
+        return merge.getCount();
+    }
+
+    @Override
+    public int getRunningMerges() {
+        return runningMerges.get();
+    }
+
+    @Override
+    public long getMergedDocs() {
+        return mergedDocs.get();
+    }
+
+    @Override
+    public double getMergeP50Millis() {
+        return merge.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getMergeMaxMillis() {
+        return merge.getMaxMillis();
+    }
+
+    // near-duplicates found at ingest, whether they were skipped or indexed into a cluster
+    @Override
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    // plain text, one metric per line
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "docs    total=%d docs_per_sec_1m=%.1f duplicates=%d%n", getDocsIndexed(), getDocsPerSecond(), getDuplicates()));
+        out.append("flush   ").append(flush.describe()).append(System.lineSeparator());
+        out.append("merge   ").append(merge.describe()).append(String.format(Locale.ROOT, " docs=%d running=%d%n", getMergedDocs(), getRunningMerges()));
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return dump();
+    }
+}
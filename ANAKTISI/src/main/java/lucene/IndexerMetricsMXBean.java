@@ -0,0 +1,28 @@
+package lucene;
+
+// Indexer metrics as published over JMX, latencies are in milliseconds
+public interface IndexerMetricsMXBean {
+    long getDocsIndexed();
+
+    double getDocsPerSecond();
+
+    long getFlushCount();
+
+    double getFlushP50Millis();
+
+    double getFlushMaxMillis();
+
+    long getMergeCount();
+
+    int getRunningMerges();
+
+    long getMergedDocs();
+
+    double getMergeP50Millis();
+
+    double getMergeMaxMillis();
+
+    long getDuplicates();
+
+    String dump();
+}
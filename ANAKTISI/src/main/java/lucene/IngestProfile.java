@@ -0,0 +1,11 @@
+package lucene;
+
+// presets for the merge policy, merge scheduler and RAM buffer, applied by IndexerConfig.setIngestProfile
+public enum IngestProfile {
+    // documents trickle in while the index is searched: small flushes, compound files for small
+    // segments and merges that keep the segment count low
+    STEADY,
+    // one large load before the index is searched: big flushes, wider tiers so segments are merged
+    // fewer times, no compound files and more merge threads; force-merge with IndexMaintenance afterwards
+    BULK
+}
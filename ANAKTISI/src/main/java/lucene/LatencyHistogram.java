@@ -0,0 +1,42 @@
+package lucene;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Locale;
+
+// Latencies recorded in microseconds with three significant digits. Recording is wait-free, so
+// it can be called from every search thread at once.
+class LatencyHistogram {
+    private final ConcurrentHistogram histogram = new ConcurrentHistogram(3);
+
+    void recordNanos(long nanos) {
+        histogram.recordValue(Math.max(0, nanos / 1000));
+    }
+
+    long getCount() {
+        return histogram.getTotalCount();
+    }
+
+    double getMeanMillis() {
+        return histogram.getMean() / 1000.0;
+    }
+
+    double getPercentileMillis(double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    double getMaxMillis() {
+        return histogram.getMaxValue() / 1000.0;
+    }
+
+    // one line with count, mean and tail percentiles, taken from a single snapshot
+    String describe() {
+        Histogram snapshot = histogram.copy();
+        return String.format(Locale.ROOT, "count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+                snapshot.getTotalCount(), snapshot.getMean() / 1000.0,
+                snapshot.getValueAtPercentile(50) / 1000.0, snapshot.getValueAtPercentile(90) / 1000.0,
+                snapshot.getValueAtPercentile(99) / 1000.0, snapshot.getValueAtPercentile(99.9) / 1000.0,
+                snapshot.getMaxValue() / 1000.0);
+    }
+}
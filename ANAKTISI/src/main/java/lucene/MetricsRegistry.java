@@ -0,0 +1,42 @@
+package lucene;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Publishes metrics beans on the platform MBeanServer as lucene:type=<type>,id=<n>, so several
+// searchers or indexers in one JVM each get their own name.
+class MetricsRegistry {
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private MetricsRegistry() {
+    }
+
+    // null when the bean could not be registered, metrics are still collected in that case
+    static ObjectName register(Object bean, String type) {
+        try {
+            ObjectName name = new ObjectName("lucene:type=" + type + ",id=" + ids.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, name);
+            return name;
+        } catch (JMException | SecurityException e) {
+            System.err.println("Could not register " + type + " metrics with JMX: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static void unregister(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            System.err.println("Could not unregister " + name + ": " + e.getMessage());
+        }
+    }
+}
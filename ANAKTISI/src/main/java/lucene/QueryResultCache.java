@@ -0,0 +1,190 @@
+package lucene;
+
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+// LRU cache of result pages keyed on the parsed query, sort, cursor and page size. Entries belong to
+// one reader version and the whole cache is dropped as soon as a search runs against a newer one.
+public class QueryResultCache {
+    private static final long ENTRY_OVERHEAD = RamUsageEstimator.shallowSizeOfInstance(Key.class)
+            + RamUsageEstimator.shallowSizeOfInstance(TopDocs.class) + 64;
+    private static final long SCORE_DOC_BYTES = RamUsageEstimator.shallowSizeOfInstance(ScoreDoc.class)
+            + RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+    private static final long FIELD_DOC_BYTES = RamUsageEstimator.shallowSizeOfInstance(FieldDoc.class)
+            + RamUsageEstimator.NUM_BYTES_OBJECT_REF + 64;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long readerVersion = -1;
+    private long bytesUsed;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public QueryResultCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized TopDocs get(long version, Query query, Sort sort, int pageSize, ScoreDoc after) {
+        checkVersion(version);
+        Entry entry = version == readerVersion ? entries.get(new Key(query, sort, pageSize, after)) : null;
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(entry.topDocs);
+    }
+
+    public synchronized void put(long version, Query query, Sort sort, int pageSize, ScoreDoc after, TopDocs topDocs) {
+        checkVersion(version);
+        if (version != readerVersion) {
+            // results from an older reader than the one already cached
+            return;
+        }
+        Key key = new Key(query, sort, pageSize, after);
+        Entry entry = new Entry(copy(topDocs), ENTRY_OVERHEAD + RamUsageEstimator.sizeOf(query) + sizeOf(topDocs));
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytesUsed -= previous.bytes;
+        }
+        bytesUsed += entry.bytes;
+
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytesUsed > maxBytes) && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            bytesUsed -= evicted.bytes;
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void checkVersion(long version) {
+        if (version > readerVersion) {
+            if (!entries.isEmpty()) {
+                invalidations.incrementAndGet();
+            }
+            entries.clear();
+            bytesUsed = 0;
+            readerVersion = version;
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytesUsed = 0;
+    }
+
+    // The cache and each caller get their own scoreDocs array, so no caller can change what an entry
+    // serves later. Subclasses caching their own TopDocs type copy it here to keep that type.
+    protected TopDocs copy(TopDocs topDocs) {
+        if (topDocs instanceof TopFieldDocs) {
+            return new TopFieldDocs(topDocs.totalHits, topDocs.scoreDocs.clone(), ((TopFieldDocs) topDocs).fields);
+        }
+        return new TopDocs(topDocs.totalHits, topDocs.scoreDocs.clone());
+    }
+
+    private static long sizeOf(TopDocs topDocs) {
+        long bytes = RamUsageEstimator.shallowSizeOf(topDocs.scoreDocs);
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            bytes += scoreDoc instanceof FieldDoc ? FIELD_DOC_BYTES : SCORE_DOC_BYTES;
+        }
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    // number of times the cache was emptied because the index changed
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryResultCache[entries=" + size() + ", bytes=" + getBytesUsed() + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + ", invalidations=" + getInvalidationCount() + "]";
+    }
+
+    private static class Entry {
+        final TopDocs topDocs;
+        final long bytes;
+
+        Entry(TopDocs topDocs, long bytes) {
+            this.topDocs = topDocs;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Key {
+        final Query query;
+        final Sort sort;
+        final int pageSize;
+        // ScoreDoc has no equals, so the cursor is compared by its values
+        final int afterDoc;
+        final float afterScore;
+        final Object[] afterFields;
+
+        Key(Query query, Sort sort, int pageSize, ScoreDoc after) {
+            this.query = query;
+            this.sort = sort;
+            this.pageSize = pageSize;
+            this.afterDoc = after == null ? -1 : after.doc;
+            this.afterScore = after == null ? 0 : after.score;
+            this.afterFields = after instanceof FieldDoc ? ((FieldDoc) after).fields : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return pageSize == other.pageSize && afterDoc == other.afterDoc
+                    && Float.compare(afterScore, other.afterScore) == 0
+                    && query.equals(other.query) && Objects.equals(sort, other.sort)
+                    && Arrays.equals(afterFields, other.afterFields);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, sort, pageSize, afterDoc, afterScore, Arrays.hashCode(afterFields));
+        }
+    }
+}
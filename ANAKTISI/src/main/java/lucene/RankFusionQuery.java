@@ -0,0 +1,200 @@
+package lucene;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The union of several rankings of one reader, each document scored by reciprocal rank fusion:
+// the sum of 1 / (rankConstant + rank) over the rankings it appears in. Being a query, the fused
+// list pages and collects like any other search. The highlighter is given the text query instead,
+// so it marks the words that matched.
+class RankFusionQuery extends Query {
+    private final Query textQuery;
+    // top-level doc ids in increasing order and their fused scores
+    private final int[] docs;
+    private final float[] scores;
+    // index into docs of the first document of each leaf, with one extra entry for the end
+    private final int[] leafStarts;
+    private final Object contextId;
+
+    private RankFusionQuery(Query textQuery, int[] docs, float[] scores, int[] leafStarts, Object contextId) {
+        this.textQuery = textQuery;
+        this.docs = docs;
+        this.scores = scores;
+        this.leafStarts = leafStarts;
+        this.contextId = contextId;
+    }
+
+    static RankFusionQuery fuse(IndexReader reader, Query textQuery, int rankConstant, TopDocs... rankings) {
+        Map<Integer, Float> fused = new HashMap<>();
+        for (TopDocs ranking : rankings) {
+            for (int rank = 0; rank < ranking.scoreDocs.length; rank++) {
+                Integer doc = ranking.scoreDocs[rank].doc;
+                Float score = fused.get(doc);
+                fused.put(doc, (score == null ? 0f : score) + 1f / (rankConstant + rank + 1));
+            }
+        }
+        int[] docs = new int[fused.size()];
+        int i = 0;
+        for (Integer doc : fused.keySet()) {
+            docs[i++] = doc;
+        }
+        Arrays.sort(docs);
+        float[] scores = new float[docs.length];
+        for (i = 0; i < docs.length; i++) {
+            scores[i] = fused.get(docs[i]);
+        }
+
+        List<LeafReaderContext> leaves = reader.leaves();
+        int[] leafStarts = new int[leaves.size() + 1];
+        for (LeafReaderContext leaf : leaves) {
+            int start = Arrays.binarySearch(docs, leaf.docBase);
+            leafStarts[leaf.ord] = start < 0 ? -1 - start : start;
+        }
+        leafStarts[leaves.size()] = docs.length;
+        return new RankFusionQuery(textQuery, docs, scores, leafStarts, reader.getContext().id());
+    }
+
+    Query getTextQuery() {
+        return textQuery;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, final float boost) throws IOException {
+        if (searcher.getIndexReader().getContext().id() != contextId) {
+            throw new IllegalStateException("Hybrid search results belong to an index reader that is no longer open, please run the search again");
+        }
+        return new Weight(this) {
+            @Override
+            public Explanation explain(LeafReaderContext context, int doc) {
+                int index = find(context, doc);
+                if (index < 0) {
+                    return Explanation.noMatch("not in the fused rankings");
+                }
+                return Explanation.match(scores[index] * boost, "reciprocal rank fusion");
+            }
+
+            @Override
+            public Scorer scorer(LeafReaderContext context) {
+                int start = leafStarts[context.ord];
+                int end = leafStarts[context.ord + 1];
+                if (start == end) {
+                    return null;
+                }
+                return new FusedScorer(this, start, end, context.docBase, boost);
+            }
+
+            @Override
+            public boolean isCacheable(LeafReaderContext context) {
+                return false;
+            }
+
+            private int find(LeafReaderContext context, int doc) {
+                int index = Arrays.binarySearch(docs, leafStarts[context.ord], leafStarts[context.ord + 1], context.docBase + doc);
+                return index < 0 ? -1 : index;
+            }
+        };
+    }
+
+    // walks the fused documents of one leaf in doc id order
+    private class FusedScorer extends Scorer {
+        private final int start;
+        private final int end;
+        private final int docBase;
+        private final float boost;
+        private int index;
+
+        FusedScorer(Weight weight, int start, int end, int docBase, float boost) {
+            super(weight);
+            this.start = start;
+            this.end = end;
+            this.docBase = docBase;
+            this.boost = boost;
+            this.index = start - 1;
+        }
+
+        @Override
+        public int docID() {
+            if (index < start) {
+                return -1;
+            }
+            return index < end ? docs[index] - docBase : DocIdSetIterator.NO_MORE_DOCS;
+        }
+
+        @Override
+        public float score() {
+            return scores[index] * boost;
+        }
+
+        @Override
+        public float getMaxScore(int upTo) {
+            return Float.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public DocIdSetIterator iterator() {
+            return new DocIdSetIterator() {
+                @Override
+                public int docID() {
+                    return FusedScorer.this.docID();
+                }
+
+                @Override
+                public int nextDoc() {
+                    index++;
+                    return docID();
+                }
+
+                @Override
+                public int advance(int target) throws IOException {
+                    return slowAdvance(target);
+                }
+
+                @Override
+                public long cost() {
+                    return end - start;
+                }
+            };
+        }
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        textQuery.visit(visitor.getSubVisitor(BooleanClause.Occur.SHOULD, this));
+    }
+
+    @Override
+    public String toString(String field) {
+        return "RankFusion(" + textQuery.toString(field) + ", " + docs.length + " docs)";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!sameClassAs(other)) {
+            return false;
+        }
+        RankFusionQuery that = (RankFusionQuery) other;
+        return contextId == that.contextId && textQuery.equals(that.textQuery)
+                && Arrays.equals(docs, that.docs) && Arrays.equals(scores, that.scores);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * classHash() + textQuery.hashCode()) + Arrays.hashCode(docs);
+    }
+}
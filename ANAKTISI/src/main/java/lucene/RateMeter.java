@@ -0,0 +1,56 @@
+package lucene;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Events per second over the last minute, kept in one slot per second. A slot is reused once
+// its second has left the window; an event racing with that reset may be lost, which is fine
+// for a rate that is only ever read by people.
+class RateMeter {
+    private static final int WINDOW_SECONDS = 60;
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+    private final AtomicLongArray slotSeconds = new AtomicLongArray(WINDOW_SECONDS);
+    private final AtomicLong total = new AtomicLong();
+
+    void mark() {
+        mark(1);
+    }
+
+    void mark(long events) {
+        long second = currentSecond();
+        int slot = (int) (second % WINDOW_SECONDS);
+        long slotSecond = slotSeconds.get(slot);
+        if (slotSecond != second && slotSeconds.compareAndSet(slot, slotSecond, second)) {
+            counts.set(slot, 0);
+        }
+        counts.addAndGet(slot, events);
+        total.addAndGet(events);
+    }
+
+    long getTotal() {
+        return total.get();
+    }
+
+    // average over the completed seconds of the window, so a half-finished second does not drag it down
+    double getRatePerSecond() {
+        long second = currentSecond();
+        long seconds = Math.min(WINDOW_SECONDS - 1, second);
+        if (seconds == 0) {
+            return 0;
+        }
+        long events = 0;
+        for (int slot = 0; slot < WINDOW_SECONDS; slot++) {
+            long slotSecond = slotSeconds.get(slot);
+            if (slotSecond < second && slotSecond >= second - seconds) {
+                events += counts.get(slot);
+            }
+        }
+        return events / (double) seconds;
+    }
+
+    private long currentSecond() {
+        return (System.nanoTime() - startNanos) / 1_000_000_000L;
+    }
+}
@@ -0,0 +1,82 @@
+package lucene;
+
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+
+public class SearchResults extends TopDocs {
+    // identifies the point-in-time searcher the hits belong to, see Searcher.getDocument(SearchResults, ScoreDoc)
+    private final long version;
+    private final Query query;
+    private final Sort sort;
+    private final int pageSize;
+    private final long offset;
+    private final YearFacets yearFacets;
+    private final boolean timedOut;
+
+    public SearchResults(TopDocs topDocs, long version, Query query, Sort sort, int pageSize, long offset) {
+        this(topDocs, version, query, sort, pageSize, offset, null, false);
+    }
+
+    public SearchResults(TopDocs topDocs, long version, Query query, Sort sort, int pageSize, long offset, YearFacets yearFacets, boolean timedOut) {
+        super(topDocs.totalHits, topDocs.scoreDocs);
+        this.version = version;
+        this.query = query;
+        this.sort = sort;
+        this.pageSize = pageSize;
+        this.offset = offset;
+        this.yearFacets = yearFacets;
+        this.timedOut = timedOut;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    // null for results ordered by relevance
+    public Sort getSort() {
+        return sort;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    // number of hits on the pages before this one
+    public long getOffset() {
+        return offset;
+    }
+
+    // hits per year over all hits of the query, null unless the search asked for facets
+    public YearFacets getYearFacets() {
+        return yearFacets;
+    }
+
+    // true when the search timeout stopped collection early, the hits and counts are then partial
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    // the searchAfter cursor for the next page, null when this is the last page
+    public ScoreDoc getCursor() {
+        return hasNextPage() ? scoreDocs[scoreDocs.length - 1] : null;
+    }
+
+    public boolean hasNextPage() {
+        if (scoreDocs.length < pageSize) {
+            return false;
+        }
+        return totalHits.relation != TotalHits.Relation.EQUAL_TO || offset + scoreDocs.length < totalHits.value;
+    }
+
+    // "42" for an exact count, "1000+" when counting stopped at the threshold
+    public String getTotalHitsDescription() {
+        return totalHits.value + (totalHits.relation == TotalHits.Relation.EQUAL_TO ? "" : "+");
+    }
+}
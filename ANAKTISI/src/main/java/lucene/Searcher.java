@@ -1,53 +1,569 @@
 package lucene;
 
 import org.apache.lucene.analysis.Analyzer;
-import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.QueryTimeout;
+import org.apache.lucene.index.QueryTimeoutImpl;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.LRUQueryCache;
+import org.apache.lucene.search.MatchNoDocsQuery;
+import org.apache.lucene.search.MultiCollectorManager;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ReferenceManager;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherLifetimeManager;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollectorManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.suggest.document.PrefixCompletionQuery;
+import org.apache.lucene.search.suggest.document.SuggestIndexSearcher;
+import org.apache.lucene.search.suggest.document.TopSuggestDocs;
+import org.apache.lucene.search.TopScoreDocCollectorManager;
+import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.store.Directory;
-import org.apache.lucene.store.FSDirectory;
 
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.ObjectName;
 
 public class Searcher {
 
-    private IndexSearcher indexSearcher;
-    private QueryParser queryParser;
+    public static final int DEFAULT_PAGE_SIZE = 10;
+    // the stored fields a result list needs, full_text lives in the DocumentStore
+    public static final Set<String> SUMMARY_FIELDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("source_id", "year", "title")));
+    public static final String[] HIGHLIGHT_FIELDS = {"title", "abstract", "full_text"};
+    public static final Sort SORT_BY_YEAR = new Sort(yearSortField(), SortField.FIELD_SCORE);
+    public static final Sort SORT_BY_TITLE = new Sort(titleSortField(), SortField.FIELD_SCORE);
+
+    private static SortField yearSortField() {
+        SortField field = new SortField("year_value", SortField.Type.INT);
+        field.setMissingValue(Integer.MAX_VALUE);
+        return field;
+    }
+
+    private static SortField titleSortField() {
+        SortField field = new SortField("title_sort", SortField.Type.STRING);
+        field.setMissingValue(SortField.STRING_LAST);
+        return field;
+    }
+
+    private ReferenceManager<IndexSearcher> searcherManager;
+    private SearcherLifetimeManager lifetimeManager;
+    private ScheduledExecutorService refresher;
+    private ThreadPoolExecutor searchExecutor;
+    private SearcherConfig searcherConfig;
+    private QueryResultCache resultCache;
+    private LRUQueryCache queryCache;
     private Analyzer analyzer;
+    private Analyzer suggestAnalyzer;
     private Map<String, Float> boosts;
+    private List<Query> warmupQueries = Collections.emptyList();
+    private List<Directory> directories = new ArrayList<>();
+    private SearcherMetrics metrics;
+    private ObjectName metricsName;
 
     public Searcher(String indexDir) throws IOException {
-        Directory dir = FSDirectory.open(Paths.get(indexDir));
-        IndexReader reader = DirectoryReader.open(dir);
-        indexSearcher = new IndexSearcher(reader);
-        analyzer = new StandardAnalyzer();
+        this(indexDir, new SearcherConfig());
+    }
+
+    // a sharded index is searched as a whole, with one slice per shard or more
+    public Searcher(String indexDir, SearcherConfig searcherConfig) throws IOException {
+        configure(searcherConfig);
+        int shards = Shards.count(indexDir);
+        System.out.println("Opened " + indexDir + (shards == 0 ? " unsharded" : " with " + shards + " shards"));
+        if (shards == 0) {
+            start(new SearcherManager(openDirectory(indexDir), newSearcherFactory()));
+            return;
+        }
+        DirectoryReader[] readers = new DirectoryReader[shards];
+        for (int i = 0; i < shards; i++) {
+            readers[i] = DirectoryReader.open(openDirectory(Shards.shardDir(indexDir, i)));
+        }
+        start(new SearcherManager(new ShardedDirectoryReader(readers), newSearcherFactory()));
+    }
+
+    private Directory openDirectory(String indexDir) throws IOException {
+        Directory directory = IndexDirectories.open(indexDir, searcherConfig.getDirectoryMode(), searcherConfig.getPreloadExtensions());
+        directories.add(directory);
+        return directory;
+    }
+
+    // near-real-time searcher that sees documents added through the indexer before they are committed
+    public Searcher(Indexer indexer) throws IOException {
+        this(indexer, new SearcherConfig());
+    }
+
+    public Searcher(Indexer indexer, SearcherConfig searcherConfig) throws IOException {
+        configure(searcherConfig);
+        IndexWriter[] writers = indexer.getWriters();
+        if (writers.length == 1) {
+            start(new SearcherManager(writers[0], true, false, newSearcherFactory()));
+            return;
+        }
+        DirectoryReader[] readers = new DirectoryReader[writers.length];
+        for (int i = 0; i < writers.length; i++) {
+            readers[i] = DirectoryReader.open(writers[i], true, false);
+        }
+        start(new SearcherManager(new ShardedDirectoryReader(readers), newSearcherFactory()));
+    }
+
+    private void configure(SearcherConfig searcherConfig) throws IOException {
+        this.searcherConfig = searcherConfig;
+        metrics = new SearcherMetrics(searcherConfig.getSlowQueryThresholdMillis());
+        lifetimeManager = new SearcherLifetimeManager();
+        if (searcherConfig.getResultCacheSize() > 0) {
+            resultCache = new QueryResultCache(searcherConfig.getResultCacheSize(), searcherConfig.getResultCacheMaxBytes()) {
+                @Override
+                protected TopDocs copy(TopDocs topDocs) {
+                    return ((CollectedTopDocs) topDocs).copy();
+                }
+            };
+        }
+        // every searcher shares one LRUQueryCache so cached filters on unchanged segments survive a refresh
+        if (searcherConfig.getQueryCacheSize() > 0) {
+            queryCache = new LRUQueryCache(searcherConfig.getQueryCacheSize(), searcherConfig.getQueryCacheMaxRamBytes());
+        }
+        int threads = searcherConfig.getSearchThreads();
+        if (threads > 1) {
+            // when the queue is full the querying thread searches the slice itself instead of waiting
+            searchExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(threads * searcherConfig.getSearchQueueSizePerThread()),
+                    daemonThreads("searcher-worker"), new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        analyzer = Analyzers.queryAnalyzer();
+        suggestAnalyzer = Analyzers.suggestAnalyzer();
 
         boosts = new HashMap<>();
         boosts.put("title", 1.0f);
         boosts.put("abstract", 0.8f);
         boosts.put("full_text", 0.5f);
 
-        queryParser = new MultiFieldQueryParser(new String[]{"title", "abstract", "full_text"}, analyzer, boosts);
+        if (searcherConfig.getWarmupQueryLog() != null) {
+            warmupQueries = loadWarmupQueries();
+        }
+    }
+
+    private List<Query> loadWarmupQueries() throws IOException {
+        List<Query> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(searcherConfig.getWarmupQueryLog(), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                queries.add(parse(line));
+            } catch (ParseException e) {
+                System.err.println("Skipping warm-up query " + line + ": " + e.getMessage());
+            }
+        }
+        return queries;
+    }
+
+    // runs the query log against a reader before the SearcherManager hands it out, so the pages of
+    // the postings and stored fields the common queries touch are already in the page cache
+    private void warm(IndexSearcher indexSearcher) throws IOException {
+        StoredFields storedFields = indexSearcher.storedFields();
+        for (Query query : warmupQueries) {
+            for (ScoreDoc scoreDoc : indexSearcher.search(query, DEFAULT_PAGE_SIZE).scoreDocs) {
+                storedFields.document(scoreDoc.doc, SUMMARY_FIELDS);
+            }
+        }
+    }
+
+    private SearcherFactory newSearcherFactory() {
+        return new SearcherFactory() {
+            @Override
+            public IndexSearcher newSearcher(IndexReader reader, IndexReader previousReader) throws IOException {
+                IndexSearcher indexSearcher = newIndexSearcher(reader);
+                if (previousReader == null || searcherConfig.isWarmupOnRefresh()) {
+                    warm(indexSearcher);
+                }
+                return indexSearcher;
+            }
+        };
+    }
+
+    private IndexSearcher newIndexSearcher(final IndexReader reader) {
+        IndexSearcher indexSearcher = new IndexSearcher(reader, searchExecutor) {
+            @Override
+            protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+                if (reader instanceof ShardedDirectoryReader) {
+                    return ((ShardedDirectoryReader) reader).slices(searcherConfig.getMaxDocsPerSlice(), searcherConfig.getMaxSegmentsPerSlice());
+                }
+                return slices(leaves, searcherConfig.getMaxDocsPerSlice(), searcherConfig.getMaxSegmentsPerSlice());
+            }
+        };
+        indexSearcher.setQueryCache(queryCache);
+        indexSearcher.setQueryCachingPolicy(searcherConfig.getQueryCachingPolicy());
+        return indexSearcher;
+    }
+
+    private void start(ReferenceManager<IndexSearcher> searcherManager) {
+        this.searcherManager = searcherManager;
+        refresher = Executors.newSingleThreadScheduledExecutor(daemonThreads("searcher-refresh"));
+        refresher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        }, searcherConfig.getRefreshIntervalMillis(), searcherConfig.getRefreshIntervalMillis(), TimeUnit.MILLISECONDS);
+        metricsName = MetricsRegistry.register(metrics, "Searcher");
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private void refresh() {
+        try {
+            searcherManager.maybeRefresh();
+            lifetimeManager.prune(new SearcherLifetimeManager.PruneByAge(searcherConfig.getResultRetentionSeconds()));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error refreshing searcher: " + e.getMessage());
+        }
+    }
+
+    // makes all changes made so far visible without waiting for the background refresh
+    public void refreshNow() throws IOException {
+        searcherManager.maybeRefreshBlocking();
+    }
+
+    public void close() throws IOException {
+        MetricsRegistry.unregister(metricsName);
+        refresher.shutdown();
+        try {
+            refresher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+        }
+        lifetimeManager.close();
+        searcherManager.close();
+        for (Directory directory : directories) {
+            directory.close();
+        }
+    }
+
+    public SearchResults search(String queryStr) throws Exception {
+        return search(queryStr, DEFAULT_PAGE_SIZE, null);
+    }
+
+    public SearchResults search(String queryStr, int pageSize, ScoreDoc after) throws Exception {
+        Query query = parse(queryStr);
+        return search(query, pageSize, after);
+    }
+
+    public SearchResults fieldSearch(String field, String queryStr) throws Exception {
+        return fieldSearch(field, queryStr, DEFAULT_PAGE_SIZE, null);
+    }
+
+    public SearchResults fieldSearch(String field, String queryStr, int pageSize, ScoreDoc after) throws Exception {
+        Query query = parse(field, queryStr);
+        return search(query, pageSize, after);
+    }
+
+    // search-as-you-type on titles: every word typed so far has to start a word of the title
+    public SearchResults prefixSearch(String prefix, int pageSize, ScoreDoc after) throws IOException {
+        return search(parsePrefix(prefix), pageSize, after);
+    }
+
+    // up to k distinct titles starting with the given text, read from the completion FST in each
+    // segment without scoring any documents
+    public List<String> suggest(String prefix, int k) throws IOException {
+        List<String> suggestions = new ArrayList<>();
+        if (prefix.trim().isEmpty()) {
+            return suggestions;
+        }
+        long start = System.nanoTime();
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            SuggestIndexSearcher suggestSearcher = new SuggestIndexSearcher(indexSearcher.getIndexReader());
+            PrefixCompletionQuery query = new PrefixCompletionQuery(suggestAnalyzer, new Term(Analyzers.TITLE_SUGGEST_FIELD, prefix));
+            for (TopSuggestDocs.SuggestScoreDoc suggestion : suggestSearcher.suggest(query, k, true).scoreLookupDocs()) {
+                suggestions.add(suggestion.key.toString());
+            }
+        } finally {
+            searcherManager.release(indexSearcher);
+            metrics.recordSuggest(System.nanoTime() - start);
+        }
+        return suggestions;
+    }
+
+    // each typed word is looked up as one term of the edge n-gram title_prefix field
+    public Query parsePrefix(String prefix) throws IOException {
+        long start = System.nanoTime();
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        int terms = 0;
+        try (TokenStream stream = analyzer.tokenStream(Analyzers.TITLE_PREFIX_FIELD, prefix)) {
+            CharTermAttribute termAttribute = stream.addAttribute(CharTermAttribute.class);
+            stream.reset();
+            while (stream.incrementToken()) {
+                builder.add(new TermQuery(new Term(Analyzers.TITLE_PREFIX_FIELD, termAttribute.toString())), BooleanClause.Occur.MUST);
+                terms++;
+            }
+            stream.end();
+        }
+        Query query = terms > 0 ? builder.build() : new MatchNoDocsQuery("no words in " + prefix);
+        metrics.recordParse(System.nanoTime() - start);
+        return query;
+    }
+
+    // the papers whose embeddings are nearest to that of the query text, at least k of them
+    // and as many as vectorCandidates, so collect the top k from it
+    public Query vectorQuery(String queryStr, int k) {
+        float[] vector = searcherConfig.getEmbedder().embed(queryStr);
+        if (vector == null) {
+            return new MatchNoDocsQuery("nothing to embed in " + queryStr);
+        }
+        return new KnnFloatVectorQuery(Indexer.EMBEDDING_FIELD, vector, Math.max(k, searcherConfig.getVectorCandidates()));
+    }
+
+    // keyword and nearest-neighbour rankings of the top hybridCandidates papers each, fused by
+    // reciprocal rank; the results page and highlight like a keyword search on the same reader
+    public SearchResults hybridSearch(String queryStr, int pageSize) throws Exception {
+        Query textQuery = parse(queryStr);
+        int candidates = searcherConfig.getHybridCandidates();
+        Query vectorQuery = vectorQuery(queryStr, candidates);
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            long version = lifetimeManager.record(indexSearcher);
+            // the three searches share one deadline and are recorded as one query
+            long start = System.nanoTime();
+            QueryTimeout timeout = newTimeout();
+            CollectedTopDocs textHits = collectHits(indexSearcher, timeout, version, textQuery, null, candidates, null, false);
+            long vectorStart = System.nanoTime();
+            CollectedTopDocs vectorHits = collectHits(indexSearcher, timeout, version, vectorQuery, null, candidates, null, false);
+            metrics.recordVectorSearch(System.nanoTime() - vectorStart);
+            Query fused = RankFusionQuery.fuse(indexSearcher.getIndexReader(), textQuery, searcherConfig.getRankConstant(), textHits, vectorHits);
+            CollectedTopDocs hits = collectHits(indexSearcher, timeout, version, fused, null, pageSize, null, false);
+            boolean timedOut = textHits.timedOut || vectorHits.timedOut || hits.timedOut;
+            metrics.recordSearch(fused, System.nanoTime() - start, hits.totalHits.value, timedOut);
+            return new SearchResults(hits, version, fused, null, pageSize, 0, null, timedOut);
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
     }
 
-    public TopDocs search(String queryStr) throws Exception {
-        Query query = queryParser.parse(QueryParser.escape(queryStr)); 
-        return indexSearcher.search(query, Integer.MAX_VALUE); 
+    // QueryParser is not thread-safe, so every call gets its own
+    public Query parse(String queryStr) throws ParseException {
+        long start = System.nanoTime();
+        QueryParser queryParser = new MultiFieldQueryParser(new String[]{"title", "abstract", "full_text"}, analyzer, boosts);
+        Query query = queryParser.parse(QueryParser.escape(queryStr));
+        metrics.recordParse(System.nanoTime() - start);
+        return query;
     }
 
-    public TopDocs fieldSearch(String field, String queryStr) throws Exception {
+    public Query parse(String field, String queryStr) throws ParseException {
+        long start = System.nanoTime();
         Query query = new QueryParser(field, analyzer).parse(QueryParser.escape(queryStr));
-        return indexSearcher.search(query, Integer.MAX_VALUE); 
+        metrics.recordParse(System.nanoTime() - start);
+        return query;
+    }
+
+    public SearchResults search(Query query, int pageSize, ScoreDoc after) throws IOException {
+        return search(query, pageSize, after, null);
+    }
+
+    // sort is read from doc values, e.g. SORT_BY_YEAR or SORT_BY_TITLE, null orders by relevance
+    public SearchResults search(Query query, int pageSize, ScoreDoc after, Sort sort) throws IOException {
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            long version = lifetimeManager.record(indexSearcher);
+            CollectedTopDocs hits = collect(indexSearcher, version, query, sort, pageSize, after, false);
+            return new SearchResults(hits, version, query, sort, pageSize, 0, null, hits.timedOut);
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+
+    public SearchResults facetedSearch(String queryStr, int pageSize) throws Exception {
+        return facetedSearch(parse(queryStr), pageSize, null);
+    }
+
+    // the first page together with the number of hits per year, counted in the same pass
+    public SearchResults facetedSearch(Query query, int pageSize, Sort sort) throws IOException {
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            long version = lifetimeManager.record(indexSearcher);
+            CollectedTopDocs hits = collect(indexSearcher, version, query, sort, pageSize, null, true);
+            return new SearchResults(hits, version, query, sort, pageSize, 0, hits.yearFacets, hits.timedOut);
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+
+    // narrows the results to the given years, with facets for the narrowed hits
+    public SearchResults drillDown(SearchResults results, int minYear, int maxYear) throws IOException {
+        return facetedSearch(withYearRange(results.getQuery(), minYear, maxYear), results.getPageSize(), results.getSort());
+    }
+
+    // the page after the given one, read from the same point-in-time searcher while it is retained
+    public SearchResults nextPage(SearchResults page) throws IOException {
+        ScoreDoc after = page.getCursor();
+        if (after == null) {
+            throw new IllegalArgumentException("There is no page after the last page");
+        }
+        IndexSearcher indexSearcher = lifetimeManager.acquire(page.getVersion());
+        if (indexSearcher == null) {
+            SearchResults next = search(page.getQuery(), page.getPageSize(), after, page.getSort());
+            return new SearchResults(next, next.getVersion(), next.getQuery(), next.getSort(), next.getPageSize(),
+                    page.getOffset() + page.scoreDocs.length, page.getYearFacets(), next.isTimedOut());
+        }
+        try {
+            CollectedTopDocs hits = collect(indexSearcher, page.getVersion(), page.getQuery(), page.getSort(), page.getPageSize(), after, false);
+            return new SearchResults(hits, page.getVersion(), page.getQuery(), page.getSort(), page.getPageSize(),
+                    page.getOffset() + page.scoreDocs.length, page.getYearFacets(), hits.timedOut);
+        } finally {
+            lifetimeManager.release(indexSearcher);
+        }
+    }
+
+    // timed as a whole, so pages served from the result cache count as queries too
+    private CollectedTopDocs collect(IndexSearcher indexSearcher, long version, Query query, Sort sort, int pageSize, ScoreDoc after, boolean facets) throws IOException {
+        long start = System.nanoTime();
+        CollectedTopDocs hits = collectHits(indexSearcher, newTimeout(), version, query, sort, pageSize, after, facets);
+        metrics.recordSearch(query, System.nanoTime() - start, hits.totalHits.value, hits.timedOut);
+        return hits;
+    }
+
+    // null when searches have no time limit
+    private QueryTimeout newTimeout() {
+        long timeoutMillis = searcherConfig.getSearchTimeoutMillis();
+        return timeoutMillis > 0 ? new QueryTimeoutImpl(timeoutMillis) : null;
+    }
+
+    // searches sharing one timeout share its deadline
+    private CollectedTopDocs collectHits(IndexSearcher indexSearcher, QueryTimeout timeout, long version, Query query, Sort sort, int pageSize, ScoreDoc after, boolean facets) throws IOException {
+        if (resultCache != null) {
+            CollectedTopDocs cached = (CollectedTopDocs) resultCache.get(version, query, sort, pageSize, after);
+            // a page cached by a search without facets is collected again
+            if (cached != null && (!facets || cached.yearFacets != null)) {
+                return cached;
+            }
+        }
+        Query searched = query;
+        if (timeout != null) {
+            // the timeout belongs to this search only, so it gets its own searcher over the same reader
+            indexSearcher = newIndexSearcher(indexSearcher.getIndexReader());
+            indexSearcher.setTimeout(timeout);
+            if (query instanceof KnnFloatVectorQuery) {
+                searched = new TimeLimitedKnnQuery((KnnFloatVectorQuery) query, timeout);
+            }
+        }
+        TopDocs topDocs;
+        YearFacets yearFacets = null;
+        if (query instanceof CollapseByClusterQuery) {
+            if (sort != null) {
+                throw new IllegalArgumentException("Results collapsed by cluster can only be ordered by relevance");
+            }
+            // the facets count clusters like the total, so the collapsing collector counts them itself
+            ClusterCollapsingCollectorManager.CollapsedTopDocs collapsed = indexSearcher.search(query, new ClusterCollapsingCollectorManager(pageSize, after, facets));
+            topDocs = collapsed;
+            yearFacets = collapsed.yearFacets;
+        } else {
+            int threshold = searcherConfig.getTotalHitsThreshold();
+            CollectorManager<?, ? extends TopDocs> topDocsManager;
+            if (sort == null) {
+                topDocsManager = new TopScoreDocCollectorManager(pageSize, after, threshold);
+            } else {
+                topDocsManager = new TopFieldCollectorManager(sort, pageSize, (FieldDoc) after, threshold);
+            }
+            if (facets) {
+                // counting every year needs every hit, so the top hits collector cannot skip
+                // non-competitive documents here
+                Object[] results = indexSearcher.search(searched, new MultiCollectorManager(topDocsManager, new YearFacetCollectorManager()));
+                topDocs = (TopDocs) results[0];
+                yearFacets = (YearFacets) results[1];
+            } else {
+                topDocs = indexSearcher.search(searched, topDocsManager);
+            }
+        }
+        // a graph search cut short by the timeout keeps its neighbours without marking the searcher
+        boolean timedOut = indexSearcher.timedOut() || (searched != query && timeout.shouldExit());
+        CollectedTopDocs hits = new CollectedTopDocs(topDocs, yearFacets, timedOut);
+        // partial results are never cached
+        if (resultCache != null && !hits.timedOut) {
+            resultCache.put(version, query, sort, pageSize, after, hits);
+        }
+        return hits;
+    }
+
+    // null when the result cache is disabled
+    public QueryResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public SearcherMetrics getMetrics() {
+        return metrics;
+    }
+
+    // only the best hit of each cluster of near-duplicate papers, see IndexerConfig.setDedupMode;
+    // hits are ordered by relevance and facets count each cluster once, like the total
+    public static Query collapseByCluster(Query query) {
+        return query instanceof CollapseByClusterQuery ? query : new CollapseByClusterQuery(query);
+    }
+
+    // restricts a query to papers published between minYear and maxYear inclusive
+    public static Query withYearRange(Query query, int minYear, int maxYear) {
+        if (query instanceof CollapseByClusterQuery) {
+            return collapseByCluster(withYearRange(((CollapseByClusterQuery) query).getQuery(), minYear, maxYear));
+        }
+        Query range = new IndexOrDocValuesQuery(
+                IntPoint.newRangeQuery("year_value", minYear, maxYear),
+                NumericDocValuesField.newSlowRangeQuery("year_value", minYear, maxYear));
+        return new BooleanQuery.Builder()
+                .add(query, BooleanClause.Occur.MUST)
+                .add(range, BooleanClause.Occur.FILTER)
+                .build();
     }
 
 
@@ -55,8 +571,74 @@ public class Searcher {
         return search(queryStr);
     }
 
-    public Document getDocument(ScoreDoc scoreDoc) throws IOException {
-        return indexSearcher.doc(scoreDoc.doc);
+    public Document getDocument(SearchResults results, ScoreDoc scoreDoc) throws IOException {
+        long start = System.nanoTime();
+        IndexSearcher indexSearcher = acquire(results);
+        try {
+            return indexSearcher.storedFields().document(scoreDoc.doc);
+        } finally {
+            lifetimeManager.release(indexSearcher);
+            metrics.recordFetch(System.nanoTime() - start);
+        }
+    }
+
+    public Document getDocument(SearchResults results, ScoreDoc scoreDoc, Set<String> fields) throws IOException {
+        long start = System.nanoTime();
+        IndexSearcher indexSearcher = acquire(results);
+        try {
+            return indexSearcher.storedFields().document(scoreDoc.doc, fields);
+        } finally {
+            lifetimeManager.release(indexSearcher);
+            metrics.recordFetch(System.nanoTime() - start);
+        }
+    }
+
+    public String getFullText(SearchResults results, ScoreDoc scoreDoc) throws IOException {
+        long start = System.nanoTime();
+        IndexSearcher indexSearcher = acquire(results);
+        try {
+            return DocumentStore.fullText(indexSearcher.getIndexReader(), scoreDoc.doc);
+        } finally {
+            lifetimeManager.release(indexSearcher);
+            metrics.recordFetch(System.nanoTime() - start);
+        }
+    }
+
+    // title and abstract come back whole, full_text as its best maxPassages passages;
+    // each array is aligned with results.scoreDocs and holds null where a field has no match
+    public Map<String, Snippet[]> highlight(SearchResults results, int maxPassages) throws IOException {
+        int[] passages = new int[HIGHLIGHT_FIELDS.length];
+        Arrays.fill(passages, 1);
+        passages[passages.length - 1] = maxPassages;
+        return highlight(results, HIGHLIGHT_FIELDS, passages);
+    }
+
+    public Map<String, Snippet[]> highlight(SearchResults results, String[] fields, int[] maxPassages) throws IOException {
+        int[] docIds = new int[results.scoreDocs.length];
+        for (int i = 0; i < docIds.length; i++) {
+            docIds[i] = results.scoreDocs[i].doc;
+        }
+        long start = System.nanoTime();
+        IndexSearcher indexSearcher = acquire(results);
+        try {
+            Query query = results.getQuery();
+            if (query instanceof RankFusionQuery) {
+                // papers found only by their embedding have no words to highlight
+                query = ((RankFusionQuery) query).getTextQuery();
+            }
+            return new SnippetHighlighter(indexSearcher, analyzer).highlightSnippets(fields, query, docIds, maxPassages);
+        } finally {
+            lifetimeManager.release(indexSearcher);
+            metrics.recordSnippet(System.nanoTime() - start);
+        }
+    }
+
+    private IndexSearcher acquire(SearchResults results) throws IOException {
+        IndexSearcher indexSearcher = lifetimeManager.acquire(results.getVersion());
+        if (indexSearcher == null) {
+            throw new IOException("Search results have expired, please run the search again");
+        }
+        return indexSearcher;
     }
 
     public static void main(String[] args) throws Exception {
@@ -72,61 +654,86 @@ public class Searcher {
 
         if (args.length == 2) {
 
-            TopDocs hits = searcher.search(queryStr);
-
-            System.out.println("Found " + hits.totalHits + " hits.");
-            for (ScoreDoc scoreDoc : hits.scoreDocs) {
-                Document doc = searcher.getDocument(scoreDoc);
-                System.out.println("Source ID: " + doc.get("source_id"));
-                System.out.println("Year: " + doc.get("year"));
-                System.out.println("Title: " + doc.get("title"));
-                System.out.println("Abstract: " + doc.get("abstract"));
-                String fullText = doc.get("full_text");
-                int index = fullText.indexOf(queryStr);
-                if (index != -1) {
-                    int start = Math.max(0, index - 30);
-                    int end = Math.min(fullText.length(), index + queryStr.length() + 30); 
-                    String relevantPart = "..." + fullText.substring(start, end) + "...";
-                    System.out.println("Relevant Part of Full Text: " + relevantPart);
-                }
-                System.out.println();
-            }
-        } else if (args.length == 3) {
-           
-            String field = args[2];
-            TopDocs hits = searcher.fieldSearch(field, queryStr);
+            SearchResults hits = searcher.facetedSearch(queryStr, DEFAULT_PAGE_SIZE);
 
-            if ("full_text".equals(field)) {
-                System.out.println("Found " + hits.totalHits + " hits.");
-                for (ScoreDoc scoreDoc : hits.scoreDocs) {
-                    Document doc = searcher.getDocument(scoreDoc);
+            System.out.println("Found " + hits.getTotalHitsDescription() + " hits.");
+            System.out.println("Hits per decade: " + hits.getYearFacets().getDecadeCounts());
+            while (true) {
+                Snippet[] snippets = searcher.highlight(hits, 1).get("full_text");
+                for (int i = 0; i < hits.scoreDocs.length; i++) {
+                    Document doc = searcher.getDocument(hits, hits.scoreDocs[i]);
                     System.out.println("Source ID: " + doc.get("source_id"));
                     System.out.println("Year: " + doc.get("year"));
                     System.out.println("Title: " + doc.get("title"));
                     System.out.println("Abstract: " + doc.get("abstract"));
-                    String fullText = doc.get("full_text");
-                    int index = fullText.indexOf(queryStr);
-                    if (index != -1) {
-                        int start = Math.max(0, index - 30); 
-                        int end = Math.min(fullText.length(), index + queryStr.length() + 30); 
-                        String relevantPart = "..." + fullText.substring(start, end) + "...";
-                        System.out.println("Relevant Part of Full Text: " + relevantPart);
+                    if (snippets[i] != null) {
+                        System.out.println("Relevant Part of Full Text: " + snippets[i]);
                     }
                     System.out.println();
                 }
-            } else {
-                System.out.println("Found " + hits.totalHits + " hits.");
-                for (ScoreDoc scoreDoc : hits.scoreDocs) {
-                    Document doc = searcher.getDocument(scoreDoc);
-                    System.out.println("Source ID: " + doc.get("source_id"));
-                    System.out.println("Year: " + doc.get("year"));
-                    System.out.println("Title: " + doc.get("title"));
+                if (!hits.hasNextPage()) {
+                    break;
                 }
+                hits = searcher.nextPage(hits);
+            }
+        } else if (args.length == 3) {
+           
+            String field = args[2];
+            SearchResults hits = searcher.fieldSearch(field, queryStr);
+
+            System.out.println("Found " + hits.getTotalHitsDescription() + " hits.");
+            while (true) {
+                if ("full_text".equals(field)) {
+                    Snippet[] snippets = searcher.highlight(hits, 1).get("full_text");
+                    for (int i = 0; i < hits.scoreDocs.length; i++) {
+                        Document doc = searcher.getDocument(hits, hits.scoreDocs[i]);
+                        System.out.println("Source ID: " + doc.get("source_id"));
+                        System.out.println("Year: " + doc.get("year"));
+                        System.out.println("Title: " + doc.get("title"));
+                        System.out.println("Abstract: " + doc.get("abstract"));
+                        if (snippets[i] != null) {
+                            System.out.println("Relevant Part of Full Text: " + snippets[i]);
+                        }
+                        System.out.println();
+                    }
+                } else {
+                    for (ScoreDoc scoreDoc : hits.scoreDocs) {
+                        Document doc = searcher.getDocument(hits, scoreDoc, SUMMARY_FIELDS);
+                        System.out.println("Source ID: " + doc.get("source_id"));
+                        System.out.println("Year: " + doc.get("year"));
+                        System.out.println("Title: " + doc.get("title"));
+                    }
+                }
+                if (!hits.hasNextPage()) {
+                    break;
+                }
+                hits = searcher.nextPage(hits);
             }
         }
+        searcher.close();
     }
 
+    private static class CollectedTopDocs extends TopDocs {
+        final YearFacets yearFacets;
+        final boolean timedOut;
 
+        CollectedTopDocs(TopDocs topDocs, YearFacets yearFacets, boolean timedOut) {
+            super(totalHits(topDocs, yearFacets, timedOut), topDocs.scoreDocs);
+            this.yearFacets = yearFacets;
+            this.timedOut = timedOut;
+        }
 
-}
+        // with its own scoreDocs array, the total is kept as it is
+        CollectedTopDocs copy() {
+            return new CollectedTopDocs(new TopDocs(totalHits, scoreDocs.clone()), yearFacets, timedOut);
+        }
 
+        // when the facets counted every hit the total is exact
+        private static TotalHits totalHits(TopDocs topDocs, YearFacets yearFacets, boolean timedOut) {
+            if (yearFacets == null || timedOut) {
+                return topDocs.totalHits;
+            }
+            return new TotalHits(yearFacets.getTotalCount(), TotalHits.Relation.EQUAL_TO);
+        }
+    }
+}
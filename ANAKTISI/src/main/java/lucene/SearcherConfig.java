@@ -0,0 +1,251 @@
+package lucene;
+
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+public class SearcherConfig {
+    private long refreshIntervalMillis = 1000;
+    private double resultRetentionSeconds = 600;
+    private int totalHitsThreshold = 1000;
+    private int resultCacheSize = 1000;
+    private long resultCacheMaxBytes = 16 * 1024 * 1024;
+    private int queryCacheSize = 1000;
+    private long queryCacheMaxRamBytes = 32 * 1024 * 1024;
+    private QueryCachingPolicy queryCachingPolicy = new UsageTrackingQueryCachingPolicy();
+    private int searchThreads = Runtime.getRuntime().availableProcessors();
+    private int searchQueueSizePerThread = 16;
+    private int maxDocsPerSlice = 250_000;
+    private int maxSegmentsPerSlice = 5;
+    private DirectoryMode directoryMode = DirectoryMode.MMAP;
+    private Set<String> preloadExtensions = IndexDirectories.DEFAULT_PRELOAD_EXTENSIONS;
+    private Path warmupQueryLog;
+    private boolean warmupOnRefresh = false;
+    private long searchTimeoutMillis = 0;
+    private long slowQueryThresholdMillis = 500;
+    private TextEmbedder embedder = new HashingEmbedder();
+    private int vectorCandidates = 100;
+    private int hybridCandidates = 100;
+    private int rankConstant = 60;
+
+    public long getRefreshIntervalMillis() {
+        return refreshIntervalMillis;
+    }
+
+    // how often the background thread reopens the reader to pick up new documents
+    public SearcherConfig setRefreshIntervalMillis(long refreshIntervalMillis) {
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        return this;
+    }
+
+    public double getResultRetentionSeconds() {
+        return resultRetentionSeconds;
+    }
+
+    // how long the reader behind a SearchResults stays open for paging and document fetches
+    public SearcherConfig setResultRetentionSeconds(double resultRetentionSeconds) {
+        this.resultRetentionSeconds = resultRetentionSeconds;
+        return this;
+    }
+
+    public int getTotalHitsThreshold() {
+        return totalHitsThreshold;
+    }
+
+    // hits are counted exactly up to this number, Integer.MAX_VALUE always counts exactly
+    // but disables early termination of non-competitive documents
+    public SearcherConfig setTotalHitsThreshold(int totalHitsThreshold) {
+        this.totalHitsThreshold = totalHitsThreshold;
+        return this;
+    }
+
+    public int getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    // maximum number of result pages kept by the QueryResultCache, 0 disables it
+    public SearcherConfig setResultCacheSize(int resultCacheSize) {
+        this.resultCacheSize = resultCacheSize;
+        return this;
+    }
+
+    public long getResultCacheMaxBytes() {
+        return resultCacheMaxBytes;
+    }
+
+    public SearcherConfig setResultCacheMaxBytes(long resultCacheMaxBytes) {
+        this.resultCacheMaxBytes = resultCacheMaxBytes;
+        return this;
+    }
+
+    public int getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    // maximum number of filter clauses kept by the per-segment LRUQueryCache, 0 disables it
+    public SearcherConfig setQueryCacheSize(int queryCacheSize) {
+        this.queryCacheSize = queryCacheSize;
+        return this;
+    }
+
+    public long getQueryCacheMaxRamBytes() {
+        return queryCacheMaxRamBytes;
+    }
+
+    public SearcherConfig setQueryCacheMaxRamBytes(long queryCacheMaxRamBytes) {
+        this.queryCacheMaxRamBytes = queryCacheMaxRamBytes;
+        return this;
+    }
+
+    public QueryCachingPolicy getQueryCachingPolicy() {
+        return queryCachingPolicy;
+    }
+
+    // decides which filter clauses the LRUQueryCache keeps, e.g. YearFilterCachingPolicy
+    public SearcherConfig setQueryCachingPolicy(QueryCachingPolicy queryCachingPolicy) {
+        this.queryCachingPolicy = queryCachingPolicy;
+        return this;
+    }
+
+    public int getSearchThreads() {
+        return searchThreads;
+    }
+
+    // threads that search the slices of one query in parallel, 1 searches every segment on the calling thread
+    public SearcherConfig setSearchThreads(int searchThreads) {
+        this.searchThreads = searchThreads;
+        return this;
+    }
+
+    public int getSearchQueueSizePerThread() {
+        return searchQueueSizePerThread;
+    }
+
+    public SearcherConfig setSearchQueueSizePerThread(int searchQueueSizePerThread) {
+        this.searchQueueSizePerThread = searchQueueSizePerThread;
+        return this;
+    }
+
+    public int getMaxDocsPerSlice() {
+        return maxDocsPerSlice;
+    }
+
+    // segments are grouped into slices of at most this many documents, one task per slice
+    public SearcherConfig setMaxDocsPerSlice(int maxDocsPerSlice) {
+        this.maxDocsPerSlice = maxDocsPerSlice;
+        return this;
+    }
+
+    public int getMaxSegmentsPerSlice() {
+        return maxSegmentsPerSlice;
+    }
+
+    public SearcherConfig setMaxSegmentsPerSlice(int maxSegmentsPerSlice) {
+        this.maxSegmentsPerSlice = maxSegmentsPerSlice;
+        return this;
+    }
+
+    public DirectoryMode getDirectoryMode() {
+        return directoryMode;
+    }
+
+    // only used when the searcher opens the index directory itself
+    public SearcherConfig setDirectoryMode(DirectoryMode directoryMode) {
+        this.directoryMode = directoryMode;
+        return this;
+    }
+
+    public Set<String> getPreloadExtensions() {
+        return preloadExtensions;
+    }
+
+    // file extensions paged into memory when a segment is opened, only used by DirectoryMode.MMAP
+    public SearcherConfig setPreloadExtensions(Set<String> preloadExtensions) {
+        this.preloadExtensions = preloadExtensions;
+        return this;
+    }
+
+    public Path getWarmupQueryLog() {
+        return warmupQueryLog;
+    }
+
+    // file with one query per line in the keyword search syntax, replayed against a new reader
+    // before it is used; blank lines and lines starting with # are ignored
+    public SearcherConfig setWarmupQueryLog(Path warmupQueryLog) {
+        this.warmupQueryLog = warmupQueryLog;
+        return this;
+    }
+
+    public boolean isWarmupOnRefresh() {
+        return warmupOnRefresh;
+    }
+
+    // also warm every reader opened by a refresh, not only the first one
+    public SearcherConfig setWarmupOnRefresh(boolean warmupOnRefresh) {
+        this.warmupOnRefresh = warmupOnRefresh;
+        return this;
+    }
+
+    public long getSearchTimeoutMillis() {
+        return searchTimeoutMillis;
+    }
+
+    // stop collecting hits after this long and return what was found so far, 0 never stops
+    public SearcherConfig setSearchTimeoutMillis(long searchTimeoutMillis) {
+        this.searchTimeoutMillis = searchTimeoutMillis;
+        return this;
+    }
+
+    public long getSlowQueryThresholdMillis() {
+        return slowQueryThresholdMillis;
+    }
+
+    // searches taking at least this long are logged to the lucene.SlowQueries logger, 0 logs none
+    public SearcherConfig setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+        this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+        return this;
+    }
+
+    public TextEmbedder getEmbedder() {
+        return embedder;
+    }
+
+    // embeds query text for vector and hybrid searches, has to match the embedder the index was built with
+    public SearcherConfig setEmbedder(TextEmbedder embedder) {
+        this.embedder = embedder;
+        return this;
+    }
+
+    public int getVectorCandidates() {
+        return vectorCandidates;
+    }
+
+    // nearest neighbours explored per segment before the best k are kept; the graph search is only
+    // as wide as the number of results it is asked for, so a small k alone misses close papers
+    public SearcherConfig setVectorCandidates(int vectorCandidates) {
+        this.vectorCandidates = vectorCandidates;
+        return this;
+    }
+
+    public int getHybridCandidates() {
+        return hybridCandidates;
+    }
+
+    // papers taken from each of the keyword and vector rankings before they are fused
+    public SearcherConfig setHybridCandidates(int hybridCandidates) {
+        this.hybridCandidates = hybridCandidates;
+        return this;
+    }
+
+    public int getRankConstant() {
+        return rankConstant;
+    }
+
+    // k in the reciprocal rank fusion score 1 / (k + rank), higher values flatten the gap between top ranks
+    public SearcherConfig setRankConstant(int rankConstant) {
+        this.rankConstant = rankConstant;
+        return this;
+    }
+}
@@ -0,0 +1,168 @@
+package lucene;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.lucene.search.Query;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Per-phase latencies, throughput and hit counts of one Searcher. Parse covers turning the user's
+// text into a query, search the collection of one page of hits, fetch the stored fields and full
+// texts loaded for the results and snippet the highlighting of a page.
+public class SearcherMetrics implements SearcherMetricsMXBean {
+    private static final Logger SLOW_QUERY_LOG = Logger.getLogger("lucene.SlowQueries");
+
+    private final long slowQueryThresholdNanos;
+    private final LatencyHistogram parse = new LatencyHistogram();
+    private final LatencyHistogram search = new LatencyHistogram();
+    private final LatencyHistogram fetch = new LatencyHistogram();
+    private final LatencyHistogram snippet = new LatencyHistogram();
+    private final LatencyHistogram suggest = new LatencyHistogram();
+    private final LatencyHistogram vector = new LatencyHistogram();
+    private final ConcurrentHistogram hitCounts = new ConcurrentHistogram(3);
+    private final RateMeter queries = new RateMeter();
+    private final AtomicLong slowQueries = new AtomicLong();
+    private final AtomicLong timedOutQueries = new AtomicLong();
+
+    SearcherMetrics(long slowQueryThresholdMillis) {
+        this.slowQueryThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryThresholdMillis);
+    }
+
+    void recordParse(long nanos) {
+        parse.recordNanos(nanos);
+    }
+
+    void recordSearch(Query query, long nanos, long totalHits, boolean timedOut) {
+        search.recordNanos(nanos);
+        hitCounts.recordValue(Math.max(0, totalHits));
+        queries.mark();
+        if (timedOut) {
+            timedOutQueries.incrementAndGet();
+        }
+        if (slowQueryThresholdNanos > 0 && nanos >= slowQueryThresholdNanos) {
+            slowQueries.incrementAndGet();
+            SLOW_QUERY_LOG.warning(String.format(Locale.ROOT, "Slow query (%.1f ms, %d hits%s): %s",
+                    nanos / 1_000_000.0, totalHits, timedOut ? ", timed out" : "", query));
+        }
+    }
+
+    void recordFetch(long nanos) {
+        fetch.recordNanos(nanos);
+    }
+
+    void recordSnippet(long nanos) {
+        snippet.recordNanos(nanos);
+    }
+
+    void recordSuggest(long nanos) {
+        suggest.recordNanos(nanos);
+    }
+
+    // the nearest-neighbour half of a hybrid search, the keyword half is recorded as a search
+    void recordVectorSearch(long nanos) {
+        vector.recordNanos(nanos);
+    }
+
+    @Override
+    public long getQueryCount() {
+        return queries.getTotal();
+    }
+
+    // over the last minute
+    @Override
+    public double getQueriesPerSecond() {
+        return queries.getRatePerSecond();
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        return slowQueries.get();
+    }
+
+    @Override
+    public long getTimedOutQueryCount() {
+        return timedOutQueries.get();
+    }
+
+    @Override
+    public double getSearchMeanMillis() {
+        return search.getMeanMillis();
+    }
+
+    @Override
+    public double getSearchP50Millis() {
+        return search.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getSearchP99Millis() {
+        return search.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getSearchMaxMillis() {
+        return search.getMaxMillis();
+    }
+
+    @Override
+    public double getParseP99Millis() {
+        return parse.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getFetchP99Millis() {
+        return fetch.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getSnippetP99Millis() {
+        return snippet.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getSuggestP99Millis() {
+        return suggest.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getVectorSearchP99Millis() {
+        return vector.getPercentileMillis(99);
+    }
+
+    @Override
+    public long getHitCountP50() {
+        return hitCounts.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getHitCountP99() {
+        return hitCounts.getValueAtPercentile(99);
+    }
+
+    // plain text, one metric per line
+    @Override
+    public String dump() {
+        Histogram hits = hitCounts.copy();
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "queries total=%d qps_1m=%.2f slow=%d timed_out=%d%n",
+                getQueryCount(), getQueriesPerSecond(), getSlowQueryCount(), getTimedOutQueryCount()));
+        out.append("parse   ").append(parse.describe()).append(System.lineSeparator());
+        out.append("search  ").append(search.describe()).append(System.lineSeparator());
+        out.append("fetch   ").append(fetch.describe()).append(System.lineSeparator());
+        out.append("snippet ").append(snippet.describe()).append(System.lineSeparator());
+        out.append("suggest ").append(suggest.describe()).append(System.lineSeparator());
+        out.append("vector  ").append(vector.describe()).append(System.lineSeparator());
+        out.append(String.format(Locale.ROOT, "hits    count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d%n",
+                hits.getTotalCount(), hits.getMean(), hits.getValueAtPercentile(50),
+                hits.getValueAtPercentile(90), hits.getValueAtPercentile(99), hits.getMaxValue()));
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return dump();
+    }
+}
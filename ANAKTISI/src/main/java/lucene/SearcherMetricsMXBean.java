@@ -0,0 +1,36 @@
+package lucene;
+
+// Searcher metrics as published over JMX, latencies are in milliseconds
+public interface SearcherMetricsMXBean {
+    long getQueryCount();
+
+    double getQueriesPerSecond();
+
+    long getSlowQueryCount();
+
+    long getTimedOutQueryCount();
+
+    double getSearchMeanMillis();
+
+    double getSearchP50Millis();
+
+    double getSearchP99Millis();
+
+    double getSearchMaxMillis();
+
+    double getParseP99Millis();
+
+    double getFetchP99Millis();
+
+    double getSnippetP99Millis();
+
+    double getSuggestP99Millis();
+
+    double getVectorSearchP99Millis();
+
+    long getHitCountP50();
+
+    long getHitCountP99();
+
+    String dump();
+}
@@ -0,0 +1,153 @@
+package lucene;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexCommit;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// One point-in-time view of every shard of a sharded index. Its leaves are the segments of all
+// shards, so an IndexSearcher over it scores with the term statistics of the whole corpus and hands
+// out doc ids that stored field and doc values lookups route to the right shard. Reopening checks
+// every shard and shares the readers of the ones that did not change.
+class ShardedDirectoryReader extends DirectoryReader {
+    private final DirectoryReader[] shards;
+    // first leaf of each shard, with one extra entry for the end
+    private final int[] shardLeafStarts;
+    private final long version;
+
+    // takes over the references to the shard readers
+    ShardedDirectoryReader(DirectoryReader[] shards) throws IOException {
+        super(shards[0].directory(), leafReaders(shards), null);
+        this.shards = shards;
+        this.shardLeafStarts = new int[shards.length + 1];
+        long version = 0;
+        for (int i = 0; i < shards.length; i++) {
+            shardLeafStarts[i + 1] = shardLeafStarts[i] + shards[i].leaves().size();
+            version += shards[i].getVersion();
+        }
+        // every change raises the version of at least one shard and never lowers another, so the
+        // sum identifies this view and orders it against older ones
+        this.version = version;
+    }
+
+    private static LeafReader[] leafReaders(DirectoryReader[] shards) {
+        List<LeafReader> leaves = new ArrayList<>();
+        for (DirectoryReader shard : shards) {
+            for (LeafReaderContext leaf : shard.leaves()) {
+                leaves.add(leaf.reader());
+            }
+        }
+        return leaves.toArray(new LeafReader[0]);
+    }
+
+    int getShardCount() {
+        return shards.length;
+    }
+
+    // slices that never span two shards, so the shards are searched concurrently and each
+    // slice reads from one index only
+    IndexSearcher.LeafSlice[] slices(int maxDocsPerSlice, int maxSegmentsPerSlice) {
+        List<LeafReaderContext> leaves = leaves();
+        List<IndexSearcher.LeafSlice> slices = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (shardLeafStarts[i] < shardLeafStarts[i + 1]) {
+                List<LeafReaderContext> shardLeaves = leaves.subList(shardLeafStarts[i], shardLeafStarts[i + 1]);
+                slices.addAll(Arrays.asList(IndexSearcher.slices(shardLeaves, maxDocsPerSlice, maxSegmentsPerSlice)));
+            }
+        }
+        return slices.toArray(new IndexSearcher.LeafSlice[0]);
+    }
+
+    @Override
+    protected DirectoryReader doOpenIfChanged() throws IOException {
+        DirectoryReader[] reopened = new DirectoryReader[shards.length];
+        boolean changed = false;
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                DirectoryReader shard = DirectoryReader.openIfChanged(shards[i]);
+                if (shard == null) {
+                    shards[i].incRef();
+                    shard = shards[i];
+                } else {
+                    changed = true;
+                }
+                reopened[i] = shard;
+            }
+        } catch (IOException | RuntimeException e) {
+            decRefAll(reopened);
+            throw e;
+        }
+        if (!changed) {
+            decRefAll(reopened);
+            return null;
+        }
+        return new ShardedDirectoryReader(reopened);
+    }
+
+    @Override
+    protected DirectoryReader doOpenIfChanged(IndexCommit commit) {
+        throw new UnsupportedOperationException("A sharded index has one commit per shard");
+    }
+
+    @Override
+    protected DirectoryReader doOpenIfChanged(IndexWriter writer, boolean applyAllDeletes) {
+        throw new UnsupportedOperationException("A sharded index has one writer per shard");
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean isCurrent() throws IOException {
+        for (DirectoryReader shard : shards) {
+            if (!shard.isCurrent()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public IndexCommit getIndexCommit() {
+        throw new UnsupportedOperationException("A sharded index has one commit per shard");
+    }
+
+    @Override
+    protected void doClose() throws IOException {
+        decRefAll(shards);
+    }
+
+    private static void decRefAll(DirectoryReader[] readers) throws IOException {
+        IOException failure = null;
+        for (DirectoryReader reader : readers) {
+            if (reader == null) {
+                continue;
+            }
+            try {
+                reader.decRef();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // the shards are cached individually, through their segments
+    @Override
+    public CacheHelper getReaderCacheHelper() {
+        return null;
+    }
+}
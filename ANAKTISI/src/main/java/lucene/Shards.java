@@ -0,0 +1,55 @@
+package lucene;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// A sharded index is a directory with one complete Lucene index per shard in shard-0, shard-1, ...
+// Papers are assigned to shards by a hash of their source_id, so an update always lands in the
+// shard that holds the previous version.
+class Shards {
+    static final String SHARD_DIR_PREFIX = "shard-";
+
+    private Shards() {
+    }
+
+    static int shardOf(String sourceId, int shards) {
+        return Math.floorMod(StringHelper.murmurhash3_x86_32(new BytesRef(sourceId), 0), shards);
+    }
+
+    static String shardDir(String indexDir, int shard) {
+        return Paths.get(indexDir, SHARD_DIR_PREFIX + shard).toString();
+    }
+
+    // Number of shard directories in the index, 0 for an index that is not sharded. A directory that
+    // holds both segments of its own and shard directories was written with both layouts; neither half
+    // is the whole index, so it is refused instead of silently searching one of them.
+    static int count(String indexDir) throws IOException {
+        int shards = 0;
+        while (Files.isDirectory(Paths.get(shardDir(indexDir, shards)))) {
+            shards++;
+        }
+        if (shards > 0 && hasSegments(indexDir)) {
+            throw new IllegalArgumentException("Index " + indexDir + " holds both an unsharded index and " + shards
+                    + " shard directories, rebuild it into an empty directory");
+        }
+        return shards;
+    }
+
+    // whether the directory itself holds a commit of an unsharded index
+    static boolean hasSegments(String indexDir) throws IOException {
+        Path path = Paths.get(indexDir);
+        if (!Files.isDirectory(path)) {
+            return false;
+        }
+        try (DirectoryStream<Path> commits = Files.newDirectoryStream(path, IndexFileNames.SEGMENTS + "_*")) {
+            return commits.iterator().hasNext();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package lucene;
+
+public class Snippet {
+    private final String text;
+    // offsets of the query matches within text
+    private final int[] matchStarts;
+    private final int[] matchEnds;
+
+    public Snippet(String text, int[] matchStarts, int[] matchEnds) {
+        this.text = text;
+        this.matchStarts = matchStarts;
+        this.matchEnds = matchEnds;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getMatchCount() {
+        return matchStarts.length;
+    }
+
+    public int getMatchStart(int i) {
+        return matchStarts[i];
+    }
+
+    public int getMatchEnd(int i) {
+        return matchEnds[i];
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
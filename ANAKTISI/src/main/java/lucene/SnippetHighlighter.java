@@ -0,0 +1,134 @@
+package lucene;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.uhighlight.LengthGoalBreakIterator;
+import org.apache.lucene.search.uhighlight.Passage;
+import org.apache.lucene.search.uhighlight.PassageFormatter;
+import org.apache.lucene.search.uhighlight.UnifiedHighlighter;
+import org.apache.lucene.search.uhighlight.WholeBreakIterator;
+
+import java.io.IOException;
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// UnifiedHighlighter that reads match offsets from the postings and returns Snippet objects.
+// Short fields are returned whole, full_text is cut into its best passages and loaded from the DocumentStore.
+class SnippetHighlighter extends UnifiedHighlighter {
+    private static final int MAX_HIGHLIGHT_LENGTH = 1_000_000;
+    private static final String ELLIPSIS = "... ";
+    private static final int PASSAGE_LENGTH = 160;
+    private static final Set<String> WHOLE_FIELDS = new HashSet<>(Arrays.asList("title", "abstract"));
+
+    SnippetHighlighter(IndexSearcher searcher, Analyzer analyzer) {
+        super(UnifiedHighlighter.builder(searcher, analyzer)
+                .withMaxLength(MAX_HIGHLIGHT_LENGTH)
+                .withFormatter(new SnippetFormatter()));
+    }
+
+    Map<String, Snippet[]> highlightSnippets(String[] fields, Query query, int[] docIds, int[] maxPassages) throws IOException {
+        Map<String, Object[]> highlights = highlightFieldsAsObjects(fields, query, docIds, maxPassages);
+        Map<String, Snippet[]> snippets = new HashMap<>();
+        for (Map.Entry<String, Object[]> entry : highlights.entrySet()) {
+            Object[] values = entry.getValue();
+            snippets.put(entry.getKey(), Arrays.copyOf(values, values.length, Snippet[].class));
+        }
+        return snippets;
+    }
+
+    @Override
+    protected BreakIterator getBreakIterator(String field) {
+        if (WHOLE_FIELDS.contains(field)) {
+            return new WholeBreakIterator();
+        }
+        // passages of about PASSAGE_LENGTH chars centred on the matches, cut at word boundaries so
+        // they stay short even when the text has no sentence punctuation
+        return LengthGoalBreakIterator.createClosestToLength(BreakIterator.getWordInstance(Locale.ROOT), PASSAGE_LENGTH, 0.5f);
+    }
+
+    @Override
+    protected int getMaxNoHighlightPassages(String field) {
+        return WHOLE_FIELDS.contains(field) ? 1 : 0;
+    }
+
+    @Override
+    protected List<CharSequence[]> loadFieldValues(String[] fields, DocIdSetIterator docIter, int cacheCharsThreshold) throws IOException {
+        Set<String> storedFields = new HashSet<>(Arrays.asList(fields));
+        StoredFields reader = searcher.storedFields();
+        List<CharSequence[]> values = new ArrayList<>();
+        for (int doc = docIter.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docIter.nextDoc()) {
+            Document document = reader.document(doc, storedFields);
+            CharSequence[] docValues = new CharSequence[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                String value = "full_text".equals(fields[i])
+                        ? DocumentStore.fullText(searcher.getIndexReader(), doc)
+                        : document.get(fields[i]);
+                docValues[i] = value == null ? "" : value;
+            }
+            values.add(docValues);
+        }
+        return values;
+    }
+
+    private static class SnippetFormatter extends PassageFormatter {
+        @Override
+        public Object format(Passage[] passages, String content) {
+            StringBuilder text = new StringBuilder();
+            List<Integer> starts = new ArrayList<>();
+            List<Integer> ends = new ArrayList<>();
+            int lastEnd = 0;
+            for (Passage passage : passages) {
+                int passageStart = passage.getStartOffset();
+                int passageEnd = passage.getEndOffset();
+                while (passageStart < passageEnd && Character.isWhitespace(content.charAt(passageStart))) {
+                    passageStart++;
+                }
+                while (passageEnd > passageStart && Character.isWhitespace(content.charAt(passageEnd - 1))) {
+                    passageEnd--;
+                }
+                if (passage.getStartOffset() > lastEnd) {
+                    text.append(text.length() > 0 ? " " + ELLIPSIS : ELLIPSIS);
+                } else if (text.length() > 0) {
+                    text.append(' ');
+                }
+                int base = text.length() - passageStart;
+                for (int i = 0; i < passage.getNumMatches(); i++) {
+                    int start = passage.getMatchStarts()[i];
+                    int end = passage.getMatchEnds()[i];
+                    // overlapping matches, e.g. from multiple query terms, are merged
+                    if (!ends.isEmpty() && start + base < ends.get(ends.size() - 1)) {
+                        ends.set(ends.size() - 1, Math.max(ends.get(ends.size() - 1), end + base));
+                        continue;
+                    }
+                    starts.add(start + base);
+                    ends.add(end + base);
+                }
+                text.append(content, passageStart, passageEnd);
+                lastEnd = passage.getEndOffset();
+            }
+            if (passages.length > 0 && lastEnd < content.length()) {
+                text.append(" ").append(ELLIPSIS.trim());
+            }
+            return new Snippet(text.toString(), toArray(starts), toArray(ends));
+        }
+
+        private static int[] toArray(List<Integer> values) {
+            int[] array = new int[values.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = values.get(i);
+            }
+            return array;
+        }
+    }
+}
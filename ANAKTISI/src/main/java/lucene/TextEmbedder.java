@@ -0,0 +1,13 @@
+package lucene;
+
+// Turns text into a dense vector for nearest-neighbour search. Papers and queries must be embedded
+// by the same implementation, so the id is stored with the index and a different one rebuilds it.
+public interface TextEmbedder {
+    // names the model and its version, e.g. "hashing-256-v1"
+    String id();
+
+    int dimension();
+
+    // a unit-length vector, or null when the text has nothing to embed
+    float[] embed(String text);
+}
@@ -0,0 +1,82 @@
+package lucene;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.QueryTimeout;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.KnnCollector;
+import org.apache.lucene.search.KnnFloatVectorQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.knn.KnnCollectorManager;
+
+import java.io.IOException;
+
+// A nearest-neighbour query whose graph search stops once the timeout expires, keeping the neighbours
+// found so far. The graph is searched while the query is rewritten, before the searcher's own timeout
+// is checked, so the timeout is applied to the graph search's collectors instead.
+class TimeLimitedKnnQuery extends KnnFloatVectorQuery {
+    private final QueryTimeout timeout;
+
+    TimeLimitedKnnQuery(KnnFloatVectorQuery query, QueryTimeout timeout) {
+        super(query.getField(), query.getTargetCopy(), query.getK(), query.getFilter());
+        this.timeout = timeout;
+    }
+
+    @Override
+    protected KnnCollectorManager getKnnCollectorManager(int k, IndexSearcher searcher) {
+        final KnnCollectorManager manager = super.getKnnCollectorManager(k, searcher);
+        return new KnnCollectorManager() {
+            @Override
+            public KnnCollector newCollector(int visitLimit, LeafReaderContext context) throws IOException {
+                return new TimeLimitedCollector(manager.newCollector(visitLimit, context));
+            }
+        };
+    }
+
+    private class TimeLimitedCollector implements KnnCollector {
+        private final KnnCollector collector;
+
+        TimeLimitedCollector(KnnCollector collector) {
+            this.collector = collector;
+        }
+
+        @Override
+        public boolean earlyTerminated() {
+            return timeout.shouldExit() || collector.earlyTerminated();
+        }
+
+        @Override
+        public void incVisitedCount(int count) {
+            collector.incVisitedCount(count);
+        }
+
+        @Override
+        public long visitedCount() {
+            return collector.visitedCount();
+        }
+
+        @Override
+        public long visitLimit() {
+            return collector.visitLimit();
+        }
+
+        @Override
+        public int k() {
+            return collector.k();
+        }
+
+        @Override
+        public boolean collect(int docId, float similarity) {
+            return collector.collect(docId, similarity);
+        }
+
+        @Override
+        public float minCompetitiveSimilarity() {
+            return collector.minCompetitiveSimilarity();
+        }
+
+        @Override
+        public TopDocs topDocs() {
+            return collector.topDocs();
+        }
+    }
+}
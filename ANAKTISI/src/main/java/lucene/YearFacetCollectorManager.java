@@ -0,0 +1,92 @@
+package lucene;
+
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreMode;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Counts hits per year_value. Used next to the top hits collector in a MultiCollectorManager, so the
+// histogram comes out of the same pass over the matching documents.
+class YearFacetCollectorManager implements CollectorManager<YearFacetCollectorManager.YearFacetCollector, YearFacets> {
+    // years below this are counted in an array, anything else falls back to a map
+    private static final int MAX_DENSE_YEAR = 4096;
+
+    @Override
+    public YearFacetCollector newCollector() {
+        return new YearFacetCollector();
+    }
+
+    @Override
+    public YearFacets reduce(Collection<YearFacetCollector> collectors) {
+        SortedMap<Integer, Long> yearCounts = new TreeMap<>();
+        long missing = 0;
+        for (YearFacetCollector collector : collectors) {
+            for (int year = 0; year < MAX_DENSE_YEAR; year++) {
+                if (collector.denseCounts[year] > 0) {
+                    add(yearCounts, year, collector.denseCounts[year]);
+                }
+            }
+            for (Map.Entry<Integer, long[]> entry : collector.sparseCounts.entrySet()) {
+                add(yearCounts, entry.getKey(), entry.getValue()[0]);
+            }
+            missing += collector.missing;
+        }
+        return new YearFacets(yearCounts, missing);
+    }
+
+    private static void add(Map<Integer, Long> counts, int year, long count) {
+        Long previous = counts.get(year);
+        counts.put(year, (previous == null ? 0 : previous) + count);
+    }
+
+    static class YearFacetCollector implements Collector {
+        private final long[] denseCounts = new long[MAX_DENSE_YEAR];
+        private final Map<Integer, long[]> sparseCounts = new HashMap<>();
+        private long missing;
+
+        @Override
+        public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+            final NumericDocValues years = DocValues.getNumeric(context.reader(), "year_value");
+            return new LeafCollector() {
+                @Override
+                public void setScorer(Scorable scorer) {
+                }
+
+                @Override
+                public void collect(int doc) throws IOException {
+                    if (!years.advanceExact(doc)) {
+                        missing++;
+                        return;
+                    }
+                    long year = years.longValue();
+                    if (year >= 0 && year < MAX_DENSE_YEAR) {
+                        denseCounts[(int) year]++;
+                    } else {
+                        long[] count = sparseCounts.get((int) year);
+                        if (count == null) {
+                            count = new long[1];
+                            sparseCounts.put((int) year, count);
+                        }
+                        count[0]++;
+                    }
+                }
+            };
+        }
+
+        @Override
+        public ScoreMode scoreMode() {
+            return ScoreMode.COMPLETE_NO_SCORES;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package lucene;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// Number of hits per publication year, counted from the year_value doc values while the hits are
+// collected. Hits whose year is missing or not a number are only counted in getMissingCount.
+public class YearFacets {
+    private final SortedMap<Integer, Long> yearCounts;
+    private final long missingCount;
+
+    YearFacets(SortedMap<Integer, Long> yearCounts, long missingCount) {
+        this.yearCounts = Collections.unmodifiableSortedMap(yearCounts);
+        this.missingCount = missingCount;
+    }
+
+    // year to number of hits, in ascending year order and without empty years
+    public SortedMap<Integer, Long> getYearCounts() {
+        return yearCounts;
+    }
+
+    // first year of each decade (1990 for 1990-1999) to number of hits
+    public SortedMap<Integer, Long> getDecadeCounts() {
+        SortedMap<Integer, Long> decadeCounts = new TreeMap<>();
+        for (Map.Entry<Integer, Long> entry : yearCounts.entrySet()) {
+            int decade = Math.floorDiv(entry.getKey(), 10) * 10;
+            Long count = decadeCounts.get(decade);
+            decadeCounts.put(decade, (count == null ? 0 : count) + entry.getValue());
+        }
+        return decadeCounts;
+    }
+
+    public long getCount(int year) {
+        Long count = yearCounts.get(year);
+        return count == null ? 0 : count;
+    }
+
+    public long getMissingCount() {
+        return missingCount;
+    }
+
+    public long getTotalCount() {
+        long total = missingCount;
+        for (long count : yearCounts.values()) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "YearFacets" + yearCounts + (missingCount > 0 ? " missing=" + missingCount : "");
+    }
+}
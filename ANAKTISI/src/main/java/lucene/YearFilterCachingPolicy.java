@@ -0,0 +1,35 @@
+package lucene;
+
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryCachingPolicy;
+import org.apache.lucene.search.UsageTrackingQueryCachingPolicy;
+
+import java.io.IOException;
+
+// Caches year range filters the first time they are used, since the same few ranges are reused
+// across many queries, and leaves every other clause to the usage tracking policy.
+public class YearFilterCachingPolicy implements QueryCachingPolicy {
+    private final QueryCachingPolicy delegate = new UsageTrackingQueryCachingPolicy();
+
+    @Override
+    public void onUse(Query query) {
+        delegate.onUse(query);
+    }
+
+    @Override
+    public boolean shouldCache(Query query) throws IOException {
+        if (isYearFilter(query)) {
+            return true;
+        }
+        return delegate.shouldCache(query);
+    }
+
+    private static boolean isYearFilter(Query query) {
+        if (query instanceof IndexOrDocValuesQuery) {
+            query = ((IndexOrDocValuesQuery) query).getIndexQuery();
+        }
+        return query instanceof PointRangeQuery && "year_value".equals(((PointRangeQuery) query).getField());
+    }
+}
@@ -0,0 +1,413 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import lucene.SearchResults;
+import lucene.Searcher;
+import lucene.SearcherConfig;
+import lucene.Snippet;
+import lucene.YearFacets;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TotalHits;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Serves one long-lived Searcher over HTTP as JSON:
+//   GET /search?q=...[&field=title][&size=10][&sort=relevance|year|title][&facets=true][&highlight=true][&collapse=true][&hybrid=true]
+//   GET /search?next=<cursor from a previous page>
+//   GET /document?id=<source_id>
+//   GET /suggest?prefix=...[&k=8]
+// At most maxConcurrentRequests requests run at once, others wait up to admissionTimeoutMillis and
+// are then rejected with 503. Search timeouts are set through SearcherConfig.setSearchTimeoutMillis.
+public class SearchServer {
+    private static final int DEFAULT_SUGGESTIONS = 8;
+    private static final int MAX_SUGGESTIONS = 50;
+
+    private final Searcher searcher;
+    private final ServerConfig serverConfig;
+    private final Semaphore admission;
+    private final Map<String, SearchResults> cursors;
+    private HttpServer httpServer;
+    private ExecutorService requestExecutor;
+
+    public SearchServer(Searcher searcher, ServerConfig serverConfig) {
+        this.searcher = searcher;
+        this.serverConfig = serverConfig;
+        this.admission = new Semaphore(serverConfig.getMaxConcurrentRequests());
+        final int maxOpenCursors = serverConfig.getMaxOpenCursors();
+        this.cursors = Collections.synchronizedMap(new LinkedHashMap<String, SearchResults>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SearchResults> eldest) {
+                return size() > maxOpenCursors;
+            }
+        });
+    }
+
+    public void start() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(serverConfig.getPort()), 0);
+        httpServer.createContext("/search", new SearchHandler());
+        httpServer.createContext("/document", new DocumentHandler());
+        httpServer.createContext("/suggest", new SuggestHandler());
+        httpServer.createContext("/metrics", new MetricsHandler());
+        requestExecutor = newRequestExecutor(serverConfig.getRequestThreads());
+        httpServer.setExecutor(requestExecutor);
+        httpServer.start();
+    }
+
+    public void stop() {
+        httpServer.stop(1);
+        requestExecutor.shutdown();
+    }
+
+    // the bound port, useful when the server was configured with port 0
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    // one virtual thread per request on Java 21 and later, a fixed pool of platform threads before that
+    private static ExecutorService newRequestExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            final AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "search-server-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    private static class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private abstract class JsonHandler implements HttpHandler {
+        abstract void respond(Map<String, String> params, JsonWriter json) throws Exception;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    sendError(exchange, 405, "Only GET is supported");
+                    return;
+                }
+                if (!admit()) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendError(exchange, 503, "Server is busy, try again later");
+                    return;
+                }
+                try {
+                    JsonWriter json = new JsonWriter();
+                    respond(parseQuery(exchange.getRequestURI()), json);
+                    send(exchange, 200, json.toString());
+                } catch (HttpError e) {
+                    sendError(exchange, e.status, e.getMessage());
+                } catch (ParseException | IllegalArgumentException e) {
+                    sendError(exchange, 400, e.getMessage());
+                } catch (Exception e) {
+                    System.err.println("Error handling " + exchange.getRequestURI() + ": " + e);
+                    sendError(exchange, 500, "Internal error");
+                } finally {
+                    admission.release();
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private boolean admit() {
+            try {
+                return admission.tryAcquire(serverConfig.getAdmissionTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private class SearchHandler extends JsonHandler {
+        @Override
+        void respond(Map<String, String> params, JsonWriter json) throws Exception {
+            SearchResults results;
+            String next = params.get("next");
+            if (next != null) {
+                SearchResults page = cursors.get(next);
+                if (page == null) {
+                    throw new HttpError(410, "Unknown or expired cursor");
+                }
+                try {
+                    results = searcher.nextPage(page);
+                } catch (IllegalStateException e) {
+                    // a hybrid page can only be continued while its reader is open
+                    throw new HttpError(410, e.getMessage());
+                }
+            } else {
+                String queryStr = params.get("q");
+                if (queryStr == null || queryStr.trim().isEmpty()) {
+                    throw new HttpError(400, "Missing parameter q");
+                }
+                int size = intParam(params, "size", Searcher.DEFAULT_PAGE_SIZE, 1, serverConfig.getMaxPageSize());
+                Sort sort = sortParam(params.get("sort"));
+                boolean collapse = Boolean.parseBoolean(params.get("collapse"));
+                boolean facets = Boolean.parseBoolean(params.get("facets"));
+                if (Boolean.parseBoolean(params.get("hybrid"))) {
+                    if (params.get("field") != null || sort != null || collapse || facets) {
+                        throw new HttpError(400, "hybrid=true cannot be combined with field, sort, collapse or facets");
+                    }
+                    results = searcher.hybridSearch(queryStr, size);
+                    writeResults(results, Boolean.parseBoolean(params.get("highlight")), json);
+                    return;
+                }
+                String field = params.get("field");
+                Query query = field == null ? searcher.parse(queryStr) : searcher.parse(field, queryStr);
+                if (collapse) {
+                    query = Searcher.collapseByCluster(query);
+                }
+                if (facets) {
+                    results = searcher.facetedSearch(query, size, sort);
+                } else {
+                    results = searcher.search(query, size, null, sort);
+                }
+            }
+            writeResults(results, Boolean.parseBoolean(params.get("highlight")), json);
+        }
+    }
+
+    private void writeResults(SearchResults results, boolean highlight, JsonWriter json) throws IOException {
+        Map<String, Snippet[]> snippets = highlight ? searcher.highlight(results, 1) : null;
+        json.beginObject();
+        json.name("total").value(results.totalHits.value);
+        json.name("totalRelation").value(results.totalHits.relation == TotalHits.Relation.EQUAL_TO ? "eq" : "gte");
+        json.name("offset").value(results.getOffset());
+        json.name("timedOut").value(results.isTimedOut());
+        json.name("next").value(results.hasNextPage() ? newCursor(results) : null);
+        json.name("hits").beginArray();
+        for (int i = 0; i < results.scoreDocs.length; i++) {
+            ScoreDoc scoreDoc = results.scoreDocs[i];
+            Document doc = searcher.getDocument(results, scoreDoc, Searcher.SUMMARY_FIELDS);
+            json.beginObject();
+            json.name("source_id").value(doc.get("source_id"));
+            json.name("year").value(doc.get("year"));
+            json.name("title").value(doc.get("title"));
+            json.name("score").value((double) scoreDoc.score);
+            if (snippets != null) {
+                json.name("highlights").beginObject();
+                for (Map.Entry<String, Snippet[]> field : snippets.entrySet()) {
+                    Snippet snippet = field.getValue()[i];
+                    if (snippet != null) {
+                        json.name(field.getKey()).value(snippet.getText());
+                    }
+                }
+                json.endObject();
+            }
+            json.endObject();
+        }
+        json.endArray();
+        if (results.getYearFacets() != null) {
+            writeFacets(results.getYearFacets(), json);
+        }
+        json.endObject();
+    }
+
+    private static void writeFacets(YearFacets facets, JsonWriter json) {
+        json.name("facets").beginObject();
+        json.name("years").beginObject();
+        for (Map.Entry<Integer, Long> year : facets.getYearCounts().entrySet()) {
+            json.name(year.getKey().toString()).value(year.getValue());
+        }
+        json.endObject();
+        json.name("decades").beginObject();
+        for (Map.Entry<Integer, Long> decade : facets.getDecadeCounts().entrySet()) {
+            json.name(decade.getKey().toString()).value(decade.getValue());
+        }
+        json.endObject();
+        json.name("missing").value(facets.getMissingCount());
+        json.endObject();
+    }
+
+    private String newCursor(SearchResults results) {
+        String cursor = UUID.randomUUID().toString();
+        cursors.put(cursor, results);
+        return cursor;
+    }
+
+    private class DocumentHandler extends JsonHandler {
+        @Override
+        void respond(Map<String, String> params, JsonWriter json) throws Exception {
+            String id = params.get("id");
+            if (id == null || id.isEmpty()) {
+                throw new HttpError(400, "Missing parameter id");
+            }
+            SearchResults results = searcher.search(new TermQuery(new Term("source_id", id)), 1, null);
+            if (results.scoreDocs.length == 0) {
+                throw new HttpError(404, "No document with source_id " + id);
+            }
+            ScoreDoc scoreDoc = results.scoreDocs[0];
+            Document doc = searcher.getDocument(results, scoreDoc);
+            json.beginObject();
+            json.name("source_id").value(doc.get("source_id"));
+            json.name("year").value(doc.get("year"));
+            json.name("title").value(doc.get("title"));
+            json.name("abstract").value(doc.get("abstract"));
+            json.name("full_text").value(searcher.getFullText(results, scoreDoc));
+            json.endObject();
+        }
+    }
+
+    private class SuggestHandler extends JsonHandler {
+        @Override
+        void respond(Map<String, String> params, JsonWriter json) throws Exception {
+            String prefix = params.get("prefix");
+            if (prefix == null) {
+                throw new HttpError(400, "Missing parameter prefix");
+            }
+            List<String> suggestions = searcher.suggest(prefix, intParam(params, "k", DEFAULT_SUGGESTIONS, 1, MAX_SUGGESTIONS));
+            json.beginObject().name("suggestions").beginArray();
+            for (String suggestion : suggestions) {
+                json.value(suggestion);
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    // plain text, and not subject to admission control so it can still be read while the server is overloaded
+    private class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+            send(exchange, 200, "text/plain; charset=utf-8", searcher.getMetrics().dump());
+        }
+    }
+
+    private static Sort sortParam(String sort) throws HttpError {
+        if (sort == null || sort.equals("relevance")) {
+            return null;
+        }
+        if (sort.equals("year")) {
+            return Searcher.SORT_BY_YEAR;
+        }
+        if (sort.equals("title")) {
+            return Searcher.SORT_BY_TITLE;
+        }
+        throw new HttpError(400, "Unknown sort " + sort + ", expected relevance, year or title");
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue, int min, int max) throws HttpError {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min && parsed <= max) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new HttpError(400, "Parameter " + name + " must be a number between " + min + " and " + max);
+    }
+
+    private static Map<String, String> parseQuery(URI uri) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, new JsonWriter().beginObject().name("error").value(message).endObject().toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, "application/json; charset=utf-8", body);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: java server.SearchServer <index dir> [port] [search timeout ms]");
+            return;
+        }
+        ServerConfig serverConfig = new ServerConfig();
+        if (args.length > 1) {
+            serverConfig.setPort(Integer.parseInt(args[1]));
+        }
+        long timeoutMillis = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+
+        final Searcher searcher = new Searcher(args[0], new SearcherConfig().setSearchTimeoutMillis(timeoutMillis));
+        final SearchServer server = new SearchServer(searcher, serverConfig);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.stop();
+                try {
+                    searcher.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing searcher: " + e.getMessage());
+                }
+            }
+        });
+        System.out.println("Serving " + args[0] + " on port " + server.getPort());
+    }
+}
@@ -0,0 +1,68 @@
+package server;
+
+public class ServerConfig {
+    private int port = 8080;
+    private int maxConcurrentRequests = Runtime.getRuntime().availableProcessors() * 2;
+    private long admissionTimeoutMillis = 100;
+    private int maxPageSize = 100;
+    private int maxOpenCursors = 10000;
+    private int requestThreads = Runtime.getRuntime().availableProcessors() * 4;
+
+    public int getPort() {
+        return port;
+    }
+
+    public ServerConfig setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    // requests handled at the same time, the rest wait for admission
+    public ServerConfig setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        return this;
+    }
+
+    public long getAdmissionTimeoutMillis() {
+        return admissionTimeoutMillis;
+    }
+
+    // how long a request waits for admission before it is rejected with 503
+    public ServerConfig setAdmissionTimeoutMillis(long admissionTimeoutMillis) {
+        this.admissionTimeoutMillis = admissionTimeoutMillis;
+        return this;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    public ServerConfig setMaxPageSize(int maxPageSize) {
+        this.maxPageSize = maxPageSize;
+        return this;
+    }
+
+    public int getMaxOpenCursors() {
+        return maxOpenCursors;
+    }
+
+    // result pages kept for their next cursor, the least recently used one is dropped first
+    public ServerConfig setMaxOpenCursors(int maxOpenCursors) {
+        this.maxOpenCursors = maxOpenCursors;
+        return this;
+    }
+
+    public int getRequestThreads() {
+        return requestThreads;
+    }
+
+    // size of the request thread pool when virtual threads are not available
+    public ServerConfig setRequestThreads(int requestThreads) {
+        this.requestThreads = requestThreads;
+        return this;
+    }
+}
@@ -0,0 +1,139 @@
+package lucene;
+
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CollapseByClusterTest {
+    private static final int PAGE_SIZE = 7;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static Map<String, Long> clusterIds;
+    private static Searcher searcher;
+
+    // a third of the papers have one or two near-duplicates
+    @BeforeClass
+    public static void indexCorpus() throws IOException {
+        List<String[]> papers = TestCorpus.papers(90, 3);
+        List<String[]> rows = new ArrayList<>(papers);
+        for (int i = 0; i < papers.size(); i += 3) {
+            rows.add(TestCorpus.nearDuplicate(papers.get(i), "dup-" + i));
+            if (i % 2 == 0) {
+                rows.add(TestCorpus.nearDuplicate(papers.get(i), "dup2-" + i));
+            }
+        }
+        File dataset = folder.newFile();
+        TestCorpus.write(dataset, rows);
+        File indexDir = folder.newFolder();
+        Indexer indexer = new Indexer(indexDir.getPath(), new File(folder.getRoot(), "index.log").getPath(),
+                new IndexerConfig().setDedupMode(DedupMode.COLLAPSE));
+        try {
+            indexer.indexDataset(dataset.getPath());
+        } finally {
+            indexer.close();
+        }
+        clusterIds = TestCorpus.clusterIds(indexDir);
+        searcher = new Searcher(indexDir.getPath());
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        if (searcher != null) {
+            searcher.close();
+        }
+    }
+
+    private static List<String> sourceIds(SearchResults results) throws IOException {
+        List<String> sourceIds = new ArrayList<>();
+        for (ScoreDoc scoreDoc : results.scoreDocs) {
+            sourceIds.add(searcher.getDocument(results, scoreDoc).get("source_id"));
+        }
+        return sourceIds;
+    }
+
+    // the best hit of each cluster, in the order of the uncollapsed results
+    private static List<String> bestPerCluster(Query query) throws IOException {
+        List<String> best = new ArrayList<>();
+        Set<Long> seen = new HashSet<>();
+        for (String sourceId : sourceIds(searcher.search(query, clusterIds.size(), null))) {
+            if (seen.add(clusterIds.get(sourceId))) {
+                best.add(sourceId);
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void pagesHoldTheBestHitOfEachCluster() throws Exception {
+        Query query = searcher.parse(TestCorpus.COMMON_WORD);
+        List<String> expected = bestPerCluster(query);
+        assertEquals(90, expected.size());
+
+        List<String> paged = new ArrayList<>();
+        SearchResults page = searcher.search(Searcher.collapseByCluster(query), PAGE_SIZE, null);
+        while (true) {
+            paged.addAll(sourceIds(page));
+            if (!page.hasNextPage()) {
+                break;
+            }
+            page = searcher.nextPage(page);
+        }
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    public void pagesOfAQueryMatchingSomePapers() throws Exception {
+        Query query = searcher.parse("w1 w2 w3 w4 w5");
+        List<String> expected = bestPerCluster(query);
+        List<String> paged = new ArrayList<>();
+        SearchResults page = searcher.search(Searcher.collapseByCluster(query), PAGE_SIZE, null);
+        assertEquals(expected.size(), page.totalHits.value);
+        while (true) {
+            paged.addAll(sourceIds(page));
+            if (!page.hasNextPage()) {
+                break;
+            }
+            page = searcher.nextPage(page);
+        }
+        assertEquals(expected, paged);
+    }
+
+    @Test
+    public void totalAndFacetsCountClusters() throws Exception {
+        Query query = searcher.parse(TestCorpus.COMMON_WORD);
+        SearchResults all = searcher.facetedSearch(query, PAGE_SIZE, null);
+        SearchResults collapsed = searcher.facetedSearch(Searcher.collapseByCluster(query), PAGE_SIZE, null);
+        assertEquals(clusterIds.size(), all.totalHits.value);
+        assertEquals(90, collapsed.totalHits.value);
+        assertEquals(90, collapsed.getYearFacets().getTotalCount());
+        assertEquals(sourceIds(searcher.search(Searcher.collapseByCluster(query), PAGE_SIZE, null)), sourceIds(collapsed));
+    }
+
+    @Test
+    public void collapsedResultsHaveNoCopies() throws Exception {
+        SearchResults results = searcher.search(Searcher.collapseByCluster(searcher.parse(TestCorpus.COMMON_WORD)), clusterIds.size(), null);
+        Set<Long> clusters = new HashSet<>();
+        for (String sourceId : sourceIds(results)) {
+            assertTrue(sourceId, clusters.add(clusterIds.get(sourceId)));
+        }
+        assertFalse(results.hasNextPage());
+    }
+}
@@ -0,0 +1,91 @@
+package lucene;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DuplicateDetectorTest {
+    private final List<String[]> papers = TestCorpus.papers(3, 1);
+
+    private static char[] minHashes(String[] paper) {
+        return DuplicateDetector.minHashes(paper[4]);
+    }
+
+    @Test
+    public void nearDuplicateJoinsTheClusterOfItsOriginal() {
+        DuplicateDetector detector = new DuplicateDetector();
+        String[] copy = TestCorpus.nearDuplicate(papers.get(0), "copy");
+        assertNull(detector.findOrAdd("p0", minHashes(papers.get(0)), true));
+
+        DuplicateDetector.Signature original = detector.findOrAdd("copy", minHashes(copy), true);
+        assertNotNull(original);
+        assertEquals("p0", original.sourceId);
+        assertEquals(Long.valueOf(DuplicateDetector.clusterId("p0")), detector.clusterIdOf("copy"));
+    }
+
+    @Test
+    public void unrelatedPapersFoundTheirOwnClusters() {
+        DuplicateDetector detector = new DuplicateDetector();
+        for (String[] paper : papers) {
+            assertNull(detector.findOrAdd(paper[0], minHashes(paper), true));
+            assertEquals(Long.valueOf(DuplicateDetector.clusterId(paper[0])), detector.clusterIdOf(paper[0]));
+        }
+    }
+
+    @Test
+    public void duplicateIsNotRegisteredUnlessKept() {
+        DuplicateDetector detector = new DuplicateDetector();
+        detector.findOrAdd("p0", minHashes(papers.get(0)), false);
+        detector.findOrAdd("copy", minHashes(TestCorpus.nearDuplicate(papers.get(0), "copy")), false);
+        assertNull(detector.clusterIdOf("copy"));
+    }
+
+    @Test
+    public void removingTheFirstPaperFoundsTheClusterAgain() {
+        DuplicateDetector detector = new DuplicateDetector();
+        detector.findOrAdd("p0", minHashes(papers.get(0)), true);
+        detector.findOrAdd("copy1", minHashes(TestCorpus.nearDuplicate(papers.get(0), "copy1")), true);
+        detector.findOrAdd("copy2", minHashes(TestCorpus.nearDuplicate(papers.get(0), "copy2")), true);
+
+        List<DuplicateDetector.Signature> moved = detector.remove("p0");
+        assertEquals(2, moved.size());
+        long clusterId = DuplicateDetector.clusterId("copy1");
+        for (DuplicateDetector.Signature signature : moved) {
+            assertEquals(clusterId, signature.clusterId);
+        }
+        assertEquals(Long.valueOf(clusterId), detector.clusterIdOf("copy2"));
+        assertNull(detector.clusterIdOf("p0"));
+
+        // a copy indexed later joins the cluster under its new name
+        DuplicateDetector.Signature original = detector.findOrAdd("copy3", minHashes(TestCorpus.nearDuplicate(papers.get(0), "copy3")), true);
+        assertEquals(clusterId, original.clusterId);
+    }
+
+    @Test
+    public void removingALaterPaperMovesNothing() {
+        DuplicateDetector detector = new DuplicateDetector();
+        detector.findOrAdd("p0", minHashes(papers.get(0)), true);
+        detector.findOrAdd("copy1", minHashes(TestCorpus.nearDuplicate(papers.get(0), "copy1")), true);
+        detector.findOrAdd("copy2", minHashes(TestCorpus.nearDuplicate(papers.get(0), "copy2")), true);
+
+        assertTrue(detector.remove("copy1").isEmpty());
+        assertEquals(Long.valueOf(DuplicateDetector.clusterId("p0")), detector.clusterIdOf("copy2"));
+        assertNull(detector.clusterIdOf("copy1"));
+    }
+
+    @Test
+    public void shortTextsHaveNoSignature() {
+        assertNull(DuplicateDetector.minHashes("too short to compare"));
+    }
+
+    @Test
+    public void signatureSurvivesTheIndex() {
+        char[] minHashes = minHashes(papers.get(0));
+        assertEquals(new String(minHashes), new String(DuplicateDetector.fromBytes(DuplicateDetector.toBytes(minHashes))));
+    }
+}
@@ -0,0 +1,78 @@
+package lucene;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HybridSearchTest {
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String[]> papers;
+    private static Searcher searcher;
+
+    @BeforeClass
+    public static void indexCorpus() throws IOException {
+        papers = TestCorpus.papers(80, 11);
+        File dataset = folder.newFile();
+        TestCorpus.write(dataset, papers);
+        File indexDir = folder.newFolder();
+        Indexer indexer = new Indexer(indexDir.getPath(), new File(folder.getRoot(), "index.log").getPath(),
+                new IndexerConfig().setEmbedder(new HashingEmbedder()));
+        try {
+            indexer.indexDataset(dataset.getPath());
+        } finally {
+            indexer.close();
+        }
+        searcher = new Searcher(indexDir.getPath(), new SearcherConfig().setEmbedder(new HashingEmbedder()));
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        if (searcher != null) {
+            searcher.close();
+        }
+    }
+
+    // the embedding of a paper's own title and abstract is nearest to the paper
+    @Test
+    public void vectorSearchFindsThePaperItself() throws Exception {
+        String[] paper = papers.get(17);
+        SearchResults results = searcher.search(searcher.vectorQuery(paper[2] + "\n" + paper[3], 5), 5, null);
+        assertEquals(paper[0], searcher.getDocument(results, results.scoreDocs[0]).get("source_id"));
+    }
+
+    @Test
+    public void hybridSearchIsOneTimedQuery() throws Exception {
+        String[] paper = papers.get(23);
+        long queries = searcher.getMetrics().getQueryCount();
+        SearchResults results = searcher.hybridSearch(paper[2], 5);
+        assertEquals(queries + 1, searcher.getMetrics().getQueryCount());
+        assertFalse(results.isTimedOut());
+        assertEquals(5, results.scoreDocs.length);
+        assertEquals(paper[0], searcher.getDocument(results, results.scoreDocs[0]).get("source_id"));
+    }
+
+    @Test
+    public void hybridResultsPageLikeKeywordResults() throws Exception {
+        SearchResults first = searcher.hybridSearch(TestCorpus.COMMON_WORD + " " + papers.get(5)[2], 10);
+        assertTrue(first.hasNextPage());
+        SearchResults second = searcher.nextPage(first);
+        ScoreDoc last = first.scoreDocs[first.scoreDocs.length - 1];
+        for (ScoreDoc scoreDoc : second.scoreDocs) {
+            assertTrue(scoreDoc.score <= last.score);
+            assertFalse(scoreDoc.doc == last.doc);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package lucene;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalIndexingTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private long index(File indexDir, File dataset) throws IOException {
+        Indexer indexer = new Indexer(indexDir.getPath(), new File(folder.getRoot(), "index.log").getPath(),
+                new IndexerConfig().setIncremental(true));
+        try {
+            return indexer.indexDataset(dataset.getPath());
+        } finally {
+            indexer.close();
+        }
+    }
+
+    @Test
+    public void onlyChangedPapersAreIndexedAgain() throws Exception {
+        File indexDir = folder.newFolder();
+        List<String[]> papers = TestCorpus.papers(30, 9);
+        File dataset = folder.newFile();
+        TestCorpus.write(dataset, papers);
+        assertEquals(30, index(indexDir, dataset));
+        // the dataset has not changed since
+        assertEquals(0, index(indexDir, dataset));
+
+        List<String[]> next = new ArrayList<>();
+        for (String[] paper : papers) {
+            if (paper[0].equals("p3") || paper[0].equals("p4")) {
+                continue;
+            }
+            if (paper[0].equals("p7")) {
+                paper = paper.clone();
+                paper[4] = paper[4] + " revised";
+            }
+            next.add(paper);
+        }
+        String[] added = TestCorpus.papers(1, 10).get(0);
+        added[0] = "new";
+        next.add(added);
+        File nextDataset = folder.newFile();
+        TestCorpus.write(nextDataset, next);
+        // p7 changed and one paper is new
+        assertEquals(2, index(indexDir, nextDataset));
+
+        Map<String, Long> indexed = TestCorpus.clusterIds(indexDir);
+        assertEquals(29, indexed.size());
+        assertFalse(indexed.containsKey("p3"));
+        assertFalse(indexed.containsKey("p4"));
+        assertTrue(indexed.containsKey("new"));
+
+        Searcher searcher = new Searcher(indexDir.getPath());
+        try {
+            SearchResults results = searcher.search(searcher.parse("full_text", "revised"), 10, null);
+            assertEquals(1, results.totalHits.value);
+            assertEquals("p7", searcher.getDocument(results, results.scoreDocs[0]).get("source_id"));
+        } finally {
+            searcher.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package lucene;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexerDedupTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String[]> papers = TestCorpus.papers(60, 2);
+
+    // every fifth paper gets two near-duplicates, each written right before its original so that
+    // parallel workers reach them at the same time
+    private List<String[]> withDuplicates() {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < papers.size(); i++) {
+            if (i % 5 == 0) {
+                rows.add(TestCorpus.nearDuplicate(papers.get(i), "dup-a-" + i));
+                rows.add(TestCorpus.nearDuplicate(papers.get(i), "dup-b-" + i));
+            }
+            rows.add(papers.get(i));
+        }
+        return rows;
+    }
+
+    private File dataset(List<String[]> rows) throws IOException {
+        File dataset = folder.newFile();
+        TestCorpus.write(dataset, rows);
+        return dataset;
+    }
+
+    private void index(File indexDir, File dataset, IndexerConfig config, int threads) throws IOException {
+        Indexer indexer = new Indexer(indexDir.getPath(), new File(folder.getRoot(), indexDir.getName() + ".log").getPath(), config);
+        try {
+            indexer.indexDataset(dataset.getPath(), threads);
+        } finally {
+            indexer.close();
+        }
+    }
+
+    @Test
+    public void collapseGivesCopiesTheClusterOfTheFirstCopy() throws IOException {
+        File indexDir = folder.newFolder();
+        index(indexDir, dataset(withDuplicates()), new IndexerConfig().setDedupMode(DedupMode.COLLAPSE), 1);
+
+        Map<String, Long> clusterIds = TestCorpus.clusterIds(indexDir);
+        assertEquals(papers.size() + 2 * 12, clusterIds.size());
+        for (int i = 0; i < papers.size(); i++) {
+            if (i % 5 == 0) {
+                long clusterId = DuplicateDetector.clusterId("dup-a-" + i);
+                assertEquals(Long.valueOf(clusterId), clusterIds.get("dup-b-" + i));
+                assertEquals(Long.valueOf(clusterId), clusterIds.get("p" + i));
+            } else {
+                assertEquals(Long.valueOf(DuplicateDetector.clusterId("p" + i)), clusterIds.get("p" + i));
+            }
+        }
+    }
+
+    @Test
+    public void skipLeavesOutLaterCopies() throws IOException {
+        File indexDir = folder.newFolder();
+        index(indexDir, dataset(withDuplicates()), new IndexerConfig().setDedupMode(DedupMode.SKIP), 1);
+
+        Map<String, Long> clusterIds = TestCorpus.clusterIds(indexDir);
+        assertEquals(papers.size(), clusterIds.size());
+        assertTrue(clusterIds.containsKey("dup-a-0"));
+        assertFalse(clusterIds.containsKey("dup-b-0"));
+        assertFalse(clusterIds.containsKey("p0"));
+    }
+
+    @Test
+    public void deletingTheFirstCopyFoundsTheClusterAgain() throws IOException {
+        File indexDir = folder.newFolder();
+        IndexerConfig config = new IndexerConfig().setDedupMode(DedupMode.COLLAPSE).setIncremental(true);
+        List<String[]> rows = withDuplicates();
+        index(indexDir, dataset(rows), config, 1);
+
+        List<String[]> remaining = new ArrayList<>();
+        for (String[] row : rows) {
+            if (!row[0].equals("dup-a-0")) {
+                remaining.add(row);
+            }
+        }
+        index(indexDir, dataset(remaining), config, 1);
+
+        Map<String, Long> clusterIds = TestCorpus.clusterIds(indexDir);
+        assertFalse(clusterIds.containsKey("dup-a-0"));
+        long clusterId = DuplicateDetector.clusterId("dup-b-0");
+        assertEquals(Long.valueOf(clusterId), clusterIds.get("dup-b-0"));
+        assertEquals(Long.valueOf(clusterId), clusterIds.get("p0"));
+    }
+
+    @Test
+    public void changedFirstCopyLeavesItsCluster() throws IOException {
+        File indexDir = folder.newFolder();
+        IndexerConfig config = new IndexerConfig().setDedupMode(DedupMode.COLLAPSE).setIncremental(true);
+        List<String[]> rows = withDuplicates();
+        index(indexDir, dataset(rows), config, 1);
+
+        // the first copy is rewritten with the text of another paper
+        List<String[]> changed = new ArrayList<>();
+        for (String[] row : rows) {
+            if (row[0].equals("dup-a-0")) {
+                row = row.clone();
+                row[4] = papers.get(1)[4] + " revised";
+            }
+            changed.add(row);
+        }
+        index(indexDir, dataset(changed), config, 1);
+
+        Map<String, Long> clusterIds = TestCorpus.clusterIds(indexDir);
+        long clusterId = DuplicateDetector.clusterId("dup-b-0");
+        assertEquals(Long.valueOf(clusterId), clusterIds.get("p0"));
+        assertEquals(clusterIds.get("p1"), clusterIds.get("dup-a-0"));
+        assertNotEquals(Long.valueOf(clusterId), clusterIds.get("dup-a-0"));
+    }
+
+    @Test
+    public void parallelRunKeepsTheOriginalsOfASerialRun() throws IOException {
+        File dataset = dataset(withDuplicates());
+        for (DedupMode mode : new DedupMode[]{DedupMode.COLLAPSE, DedupMode.SKIP}) {
+            File serialDir = folder.newFolder();
+            index(serialDir, dataset, new IndexerConfig().setDedupMode(mode), 1);
+            Map<String, Long> serial = TestCorpus.clusterIds(serialDir);
+            for (int run = 0; run < 3; run++) {
+                File parallelDir = folder.newFolder();
+                index(parallelDir, dataset, new IndexerConfig().setDedupMode(mode), 4);
+                assertEquals(mode.toString(), serial, TestCorpus.clusterIds(parallelDir));
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package lucene;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ParallelIndexingTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File index(File dataset, int threads) throws IOException {
+        File indexDir = folder.newFolder();
+        Indexer indexer = new Indexer(indexDir.getPath(), new File(folder.getRoot(), indexDir.getName() + ".log").getPath(),
+                new IndexerConfig().setMaxBufferedDocs(25));
+        try {
+            assertEquals(200, indexer.indexDataset(dataset.getPath(), threads));
+            assertEquals(200, indexer.getDocsIndexed());
+        } finally {
+            indexer.close();
+        }
+        return indexDir;
+    }
+
+    @Test
+    public void parallelRunIndexesWhatASerialRunDoes() throws Exception {
+        File dataset = folder.newFile();
+        TestCorpus.write(dataset, TestCorpus.papers(200, 8));
+        Map<String, Long> serial = TestCorpus.clusterIds(index(dataset, 1));
+        Map<String, Long> parallel = TestCorpus.clusterIds(index(dataset, 4));
+        assertEquals(200, serial.size());
+        assertEquals(serial.keySet(), parallel.keySet());
+    }
+}
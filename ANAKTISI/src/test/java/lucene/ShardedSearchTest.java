@@ -0,0 +1,102 @@
+package lucene;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedSearchTest {
+    private static final String[] QUERIES = {TestCorpus.COMMON_WORD, "w7", "w10 w20 w30", "w42 corpus"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File index(File dataset, int shards) throws IOException {
+        File indexDir = folder.newFolder();
+        Indexer indexer = new Indexer(indexDir.getPath(), new File(folder.getRoot(), indexDir.getName() + ".log").getPath(),
+                new IndexerConfig().setShards(shards));
+        try {
+            indexer.indexDataset(dataset.getPath());
+        } finally {
+            indexer.close();
+        }
+        return indexDir;
+    }
+
+    // source_id to score of every hit; ties may be ordered differently, doc ids differ between layouts
+    private static Map<String, Float> scores(Searcher searcher, String queryStr) throws Exception {
+        SearchResults results = searcher.search(searcher.parse(queryStr), 1000, null);
+        Map<String, Float> scores = new HashMap<>();
+        for (ScoreDoc scoreDoc : results.scoreDocs) {
+            scores.put(searcher.getDocument(results, scoreDoc).get("source_id"), scoreDoc.score);
+        }
+        assertEquals(results.totalHits.value, scores.size());
+        return scores;
+    }
+
+    @Test
+    public void shardedIndexScoresLikeAnUnshardedOne() throws Exception {
+        File dataset = folder.newFile();
+        TestCorpus.write(dataset, TestCorpus.papers(150, 4));
+        Searcher unsharded = new Searcher(index(dataset, 1).getPath());
+        Searcher sharded = new Searcher(index(dataset, 3).getPath());
+        try {
+            for (String queryStr : QUERIES) {
+                Map<String, Float> expected = scores(unsharded, queryStr);
+                Map<String, Float> actual = scores(sharded, queryStr);
+                assertFalse(queryStr, expected.isEmpty());
+                assertEquals(queryStr, expected.keySet(), actual.keySet());
+                for (Map.Entry<String, Float> entry : expected.entrySet()) {
+                    assertEquals(queryStr + " " + entry.getKey(), entry.getValue(), actual.get(entry.getKey()), 1e-6f);
+                }
+            }
+        } finally {
+            unsharded.close();
+            sharded.close();
+        }
+    }
+
+    @Test
+    public void shardsAreSearchedPageByPage() throws Exception {
+        File dataset = folder.newFile();
+        TestCorpus.write(dataset, TestCorpus.papers(50, 5));
+        Searcher sharded = new Searcher(index(dataset, 2).getPath());
+        try {
+            SearchResults page = sharded.search(sharded.parse(TestCorpus.COMMON_WORD), 20, null);
+            int hits = page.scoreDocs.length;
+            while (page.hasNextPage()) {
+                page = sharded.nextPage(page);
+                hits += page.scoreDocs.length;
+            }
+            assertEquals(50, hits);
+        } finally {
+            sharded.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unshardedIndexIsNotSharded() throws Exception {
+        File dataset = folder.newFile();
+        TestCorpus.write(dataset, TestCorpus.papers(10, 6));
+        File indexDir = index(dataset, 1);
+        assertTrue(Shards.hasSegments(indexDir.getPath()));
+        new Indexer(indexDir.getPath(), new File(folder.getRoot(), "reshard.log").getPath(), new IndexerConfig().setShards(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shardCountCannotChange() throws Exception {
+        File dataset = folder.newFile();
+        TestCorpus.write(dataset, TestCorpus.papers(10, 7));
+        File indexDir = index(dataset, 2);
+        new Indexer(indexDir.getPath(), new File(folder.getRoot(), "reshard.log").getPath(), new IndexerConfig().setShards(3));
+    }
+}
@@ -0,0 +1,103 @@
+package lucene;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// A small dataset of papers made of random words, and near-duplicates of them that differ from their
+// original in one word of the full text. Every paper mentions "corpus" a few times, so searching for
+// it matches everything with varying scores.
+final class TestCorpus {
+    static final String COMMON_WORD = "corpus";
+    private static final int VOCABULARY = 500;
+    private static final int FULL_TEXT_WORDS = 80;
+
+    private TestCorpus() {
+    }
+
+    // papers p0, p1, ... with rows of source_id, year, title, abstract and full_text
+    static List<String[]> papers(int count, long seed) {
+        Random random = new Random(seed);
+        List<String[]> papers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String title = words(random, 4);
+            String abstractText = words(random, 15);
+            StringBuilder fullText = new StringBuilder(words(random, FULL_TEXT_WORDS));
+            for (int mentions = random.nextInt(4); mentions >= 0; mentions--) {
+                fullText.append(' ').append(COMMON_WORD);
+            }
+            papers.add(new String[]{"p" + i, Integer.toString(1990 + random.nextInt(30)), title, abstractText, fullText.toString()});
+        }
+        return papers;
+    }
+
+    static String[] nearDuplicate(String[] paper, String sourceId) {
+        String[] copy = paper.clone();
+        copy[0] = sourceId;
+        copy[4] = "rescanned " + paper[4].substring(paper[4].indexOf(' ') + 1);
+        return copy;
+    }
+
+    static void write(File dataset, List<String[]> rows) throws IOException {
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(dataset.toPath()), StandardCharsets.UTF_8);
+             CSVPrinter printer = new CSVPrinter(writer, CSVFormat.DEFAULT)) {
+            printer.printRecord("source_id", "year", "title", "abstract", "full_text");
+            for (String[] row : rows) {
+                printer.printRecord(Arrays.asList(row));
+            }
+        }
+    }
+
+    // source_id to cluster_id of every paper in an unsharded index
+    static Map<String, Long> clusterIds(File indexDir) throws IOException {
+        Map<String, Long> clusterIds = new HashMap<>();
+        try (Directory directory = FSDirectory.open(Paths.get(indexDir.getPath()));
+             DirectoryReader reader = DirectoryReader.open(directory)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                SortedDocValues sourceIds = DocValues.getSorted(leaf.reader(), "source_id");
+                NumericDocValues clusters = DocValues.getNumeric(leaf.reader(), DuplicateDetector.CLUSTER_FIELD);
+                Bits liveDocs = leaf.reader().getLiveDocs();
+                for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                    if ((liveDocs != null && !liveDocs.get(doc)) || !sourceIds.advanceExact(doc)) {
+                        continue;
+                    }
+                    String sourceId = sourceIds.lookupOrd(sourceIds.ordValue()).utf8ToString();
+                    clusterIds.put(sourceId, clusters.advanceExact(doc) ? clusters.longValue() : null);
+                }
+            }
+        }
+        return clusterIds;
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                words.append(' ');
+            }
+            words.append('w').append(random.nextInt(VOCABULARY));
+        }
+        return words.toString();
+    }
+}
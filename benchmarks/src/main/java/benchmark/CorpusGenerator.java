@@ -0,0 +1,94 @@
+package benchmark;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Writes a synthetic papers.csv (source_id, year, title, abstract, full_text). Words are drawn from a
+// Zipf-like distribution over a generated vocabulary, so term statistics resemble real text; the same
+// seed always produces the same corpus.
+public class CorpusGenerator {
+    // frequent real words the query benchmarks search for
+    static final String[] COMMON_WORDS = {"learning", "network", "neural", "model", "data", "search", "retrieval", "graph", "language", "semantic"};
+    private static final String[] SYLLABLES = {"ba", "co", "de", "fi", "ga", "hu", "ki", "lo", "ma", "ne", "po", "qua", "ri", "so", "tu", "ve", "xa", "zo"};
+    private static final int VOCABULARY_SIZE = 20000;
+
+    private final Random random;
+    private final String[] vocabulary;
+    private final double[] cumulative;
+
+    public CorpusGenerator(long seed) {
+        random = new Random(seed);
+        vocabulary = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < COMMON_WORDS.length; i++) {
+            vocabulary[i] = COMMON_WORDS[i];
+        }
+        for (int i = COMMON_WORDS.length; i < VOCABULARY_SIZE; i++) {
+            vocabulary[i] = syntheticWord(i);
+        }
+        cumulative = new double[VOCABULARY_SIZE];
+        double sum = 0;
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    private static String syntheticWord(int n) {
+        StringBuilder word = new StringBuilder();
+        do {
+            word.append(SYLLABLES[n % SYLLABLES.length]);
+            n /= SYLLABLES.length;
+        } while (n > 0);
+        return word.toString();
+    }
+
+    String word() {
+        int index = java.util.Arrays.binarySearch(cumulative, random.nextDouble());
+        return vocabulary[index >= 0 ? index : Math.min(-index - 1, VOCABULARY_SIZE - 1)];
+    }
+
+    String words(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(i % 20 == 0 ? ". " : " ");
+            }
+            text.append(word());
+        }
+        return text.append('.').toString();
+    }
+
+    public void write(Path csv, int papers, int fullTextWords) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(csv, StandardCharsets.UTF_8);
+             CSVPrinter printer = new CSVPrinter(out, CSVFormat.DEFAULT)) {
+            printer.printRecord("source_id", "year", "title", "abstract", "full_text");
+            for (int i = 0; i < papers; i++) {
+                String title = words(4 + random.nextInt(8));
+                printer.printRecord(Integer.toString(i + 1), Integer.toString(1987 + random.nextInt(33)),
+                        title.substring(0, title.length() - 1), words(100 + random.nextInt(150)),
+                        words(fullTextWords / 2 + random.nextInt(fullTextWords)));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java benchmark.CorpusGenerator <output csv> <papers> [full text words] [seed]");
+            return;
+        }
+        int fullTextWords = args.length > 2 ? Integer.parseInt(args[2]) : 3000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+        new CorpusGenerator(seed).write(Paths.get(args[0]), Integer.parseInt(args[1]), fullTextWords);
+    }
+}
@@ -0,0 +1,89 @@
+package benchmark;
+
+import lucene.DedupMode;
+import lucene.Indexer;
+import lucene.IndexerConfig;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Ingest throughput of Indexer.indexDataset. Every invocation indexes the whole corpus into an
+// empty directory; the docs counter reports documents per second.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IndexingBenchmark {
+    @Param({"2000"})
+    public int papers;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    @Param({"3000"})
+    public int fullTextWords;
+
+    // COLLAPSE signs every paper and indexes it whether or not it is a duplicate
+    @Param({"OFF", "COLLAPSE"})
+    public DedupMode dedup;
+
+    private Path workDir;
+    private Path csv;
+    private Path indexDir;
+    private Indexer indexer;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Docs {
+        public long docs;
+    }
+
+    @Setup(Level.Trial)
+    public void generateCorpus() throws Exception {
+        workDir = Files.createTempDirectory("indexing-benchmark");
+        csv = workDir.resolve("papers.csv");
+        new CorpusGenerator(42).write(csv, papers, fullTextWords);
+    }
+
+    @Setup(Level.Invocation)
+    public void openIndexer() throws Exception {
+        indexDir = Files.createTempDirectory(workDir, "index");
+        indexer = new Indexer(indexDir.toString(), workDir.resolve("log.txt").toString(), new IndexerConfig().setDedupMode(dedup));
+    }
+
+    @Benchmark
+    public long indexDataset(Docs counter) throws Exception {
+        long docs = indexer.indexDataset(csv.toString(), threads);
+        counter.docs += docs;
+        return docs;
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeIndexer() throws Exception {
+        indexer.close();
+        BenchmarkFiles.deleteRecursively(indexDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws Exception {
+        BenchmarkFiles.deleteRecursively(workDir);
+    }
+}
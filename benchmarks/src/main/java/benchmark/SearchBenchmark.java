@@ -0,0 +1,133 @@
+package benchmark;
+
+import lucene.Indexer;
+import lucene.IndexerConfig;
+import lucene.SearchResults;
+import lucene.Searcher;
+import lucene.SearcherConfig;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.search.ScoreDoc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Query latency against an index of the synthetic corpus built once per trial. The result cache is
+// disabled so every invocation runs the full query.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    @Param({"10000"})
+    public int papers;
+
+    @Param({"3000"})
+    public int fullTextWords;
+
+    @Param({"10"})
+    public int pageSize;
+
+    private Path workDir;
+    private Searcher searcher;
+    private SearchResults fetchPage;
+
+    @Setup(Level.Trial)
+    public void buildIndex() throws Exception {
+        workDir = Files.createTempDirectory("search-benchmark");
+        Path csv = workDir.resolve("papers.csv");
+        new CorpusGenerator(42).write(csv, papers, fullTextWords);
+
+        String indexDir = workDir.resolve("index").toString();
+        Indexer indexer = new Indexer(indexDir, workDir.resolve("log.txt").toString(), new IndexerConfig());
+        indexer.indexDataset(csv.toString(), Runtime.getRuntime().availableProcessors());
+        indexer.close();
+
+        searcher = new Searcher(indexDir, new SearcherConfig().setResultCacheSize(0));
+        fetchPage = searcher.search("learning", pageSize, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteIndex() throws Exception {
+        searcher.close();
+        BenchmarkFiles.deleteRecursively(workDir);
+    }
+
+    @Benchmark
+    public SearchResults singleTermQuery() throws Exception {
+        return searcher.search("learning", pageSize, null);
+    }
+
+    @Benchmark
+    public SearchResults multiTermQuery() throws Exception {
+        return searcher.search("neural network graph retrieval", pageSize, null);
+    }
+
+    @Benchmark
+    public SearchResults fieldSearch() throws Exception {
+        return searcher.fieldSearch("title", "semantic", pageSize, null);
+    }
+
+    @Benchmark
+    public SearchResults titlePrefix() throws Exception {
+        return searcher.prefixSearch("neur net", pageSize, null);
+    }
+
+    @Benchmark
+    public List<String> suggest() throws Exception {
+        return searcher.suggest("neural n", 8);
+    }
+
+    @Benchmark
+    public SearchResults facetedQuery() throws Exception {
+        return searcher.facetedSearch("learning", pageSize);
+    }
+
+    @Benchmark
+    public SearchResults sortedByYear() throws Exception {
+        return searcher.search(searcher.parse("learning"), pageSize, null, Searcher.SORT_BY_YEAR);
+    }
+
+    @Benchmark
+    public SearchResults sortedByTitle() throws Exception {
+        return searcher.search(searcher.parse("learning"), pageSize, null, Searcher.SORT_BY_TITLE);
+    }
+
+    @Benchmark
+    public void documentFetch(Blackhole blackhole) throws Exception {
+        for (ScoreDoc scoreDoc : fetchPage.scoreDocs) {
+            Document doc = searcher.getDocument(fetchPage, scoreDoc, Searcher.SUMMARY_FIELDS);
+            blackhole.consume(doc);
+        }
+    }
+
+    @Benchmark
+    public void fullTextFetch(Blackhole blackhole) throws Exception {
+        for (ScoreDoc scoreDoc : fetchPage.scoreDocs) {
+            blackhole.consume(searcher.getFullText(fetchPage, scoreDoc));
+        }
+    }
+
+    @Benchmark
+    public Object highlight() throws Exception {
+        return searcher.highlight(fetchPage, 1);
+    }
+}
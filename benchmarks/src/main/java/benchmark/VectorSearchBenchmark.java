@@ -0,0 +1,187 @@
+package benchmark;
+
+import lucene.HashingEmbedder;
+import lucene.Indexer;
+import lucene.IndexerConfig;
+import lucene.SearchResults;
+import lucene.Searcher;
+import lucene.SearcherConfig;
+import lucene.TextEmbedder;
+
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FloatVectorValues;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Latency of nearest-neighbour and hybrid searches for each HNSW graph setting, with and without
+// scalar quantization of the vectors. Recall@k against an exact scan of every embedding is measured
+// once per trial and printed before the iterations start.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VectorSearchBenchmark {
+    private static final int QUERIES = 100;
+
+    @Param({"10000"})
+    public int papers;
+
+    @Param({"300"})
+    public int fullTextWords;
+
+    @Param({"8", "16", "32"})
+    public int maxConn;
+
+    @Param({"100"})
+    public int beamWidth;
+
+    @Param({"false", "true"})
+    public boolean quantized;
+
+    @Param({"10"})
+    public int k;
+
+    // query-time width of the graph search, SearcherConfig.setVectorCandidates
+    @Param({"10", "100"})
+    public int candidates;
+
+    private Path workDir;
+    private Searcher searcher;
+    private String[] queries;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void buildIndex() throws Exception {
+        workDir = Files.createTempDirectory("vector-search-benchmark");
+        Path csv = workDir.resolve("papers.csv");
+        new CorpusGenerator(42).write(csv, papers, fullTextWords);
+
+        TextEmbedder embedder = new HashingEmbedder();
+        String indexDir = workDir.resolve("index").toString();
+        Indexer indexer = new Indexer(indexDir, workDir.resolve("log.txt").toString(), new IndexerConfig()
+                .setEmbedder(embedder).setVectorGraph(maxConn, beamWidth).setVectorQuantization(quantized));
+        indexer.indexDataset(csv.toString(), Runtime.getRuntime().availableProcessors());
+        indexer.close();
+
+        // queries come from a different seed than the corpus, so none is an indexed title
+        CorpusGenerator queryWords = new CorpusGenerator(7);
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String words = queryWords.words(2 + i % 4);
+            queries[i] = words.substring(0, words.length() - 1);
+        }
+
+        searcher = new Searcher(indexDir, new SearcherConfig().setResultCacheSize(0).setEmbedder(embedder)
+                .setVectorCandidates(candidates).setHybridCandidates(candidates));
+        System.out.println(String.format(Locale.ROOT, "%nrecall@%d (maxConn=%d, beamWidth=%d, quantized=%b, candidates=%d): %.4f",
+                k, maxConn, beamWidth, quantized, candidates, recall(indexDir, embedder)));
+    }
+
+    private double recall(String indexDir, TextEmbedder embedder) throws Exception {
+        List<float[]> vectors = new ArrayList<>();
+        Map<Integer, Integer> ordinals = new HashMap<>();
+        try (Directory directory = FSDirectory.open(Paths.get(indexDir));
+             DirectoryReader reader = DirectoryReader.open(directory)) {
+            for (LeafReaderContext leaf : reader.leaves()) {
+                FloatVectorValues values = leaf.reader().getFloatVectorValues(Indexer.EMBEDDING_FIELD);
+                if (values == null) {
+                    continue;
+                }
+                for (int doc = values.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = values.nextDoc()) {
+                    ordinals.put(leaf.docBase + doc, vectors.size());
+                    vectors.add(values.vectorValue().clone());
+                }
+            }
+        }
+
+        long found = 0;
+        long expected = 0;
+        for (String query : queries) {
+            float[] vector = embedder.embed(query);
+            if (vector == null) {
+                continue;
+            }
+            // a hit counts when it scores at least as high as the k-th exact neighbour, many
+            // papers share a score for short queries and any of them is a correct answer
+            float threshold = kthScore(vector, vectors);
+            SearchResults results = searcher.search(searcher.vectorQuery(query, k), k, null);
+            for (ScoreDoc scoreDoc : results.scoreDocs) {
+                if (dotProduct(vector, vectors.get(ordinals.get(scoreDoc.doc))) >= threshold) {
+                    found++;
+                }
+            }
+            expected += Math.min(k, vectors.size());
+        }
+        return expected == 0 ? 0 : (double) found / expected;
+    }
+
+    // the k-th highest dot product with the query, found by scoring every vector
+    private float kthScore(float[] query, List<float[]> vectors) {
+        float[] scores = new float[vectors.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = dotProduct(query, vectors.get(i));
+        }
+        Arrays.sort(scores);
+        return scores[Math.max(0, scores.length - k)] - 1e-6f;
+    }
+
+    private static float dotProduct(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteIndex() throws Exception {
+        searcher.close();
+        BenchmarkFiles.deleteRecursively(workDir);
+    }
+
+    private String nextQuery() {
+        String query = queries[next];
+        next = (next + 1) % queries.length;
+        return query;
+    }
+
+    @Benchmark
+    public SearchResults knnSearch() throws IOException {
+        return searcher.search(searcher.vectorQuery(nextQuery(), k), k, null);
+    }
+
+    @Benchmark
+    public SearchResults hybridSearch() throws Exception {
+        return searcher.hybridSearch(nextQuery(), k);
+    }
+}